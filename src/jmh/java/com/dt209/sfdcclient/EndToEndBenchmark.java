@@ -0,0 +1,78 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Calls per second through one shared client against {@link MockSoapServer}, with concurrent callers.
+ * Run with -t (or change {@link Threads}) to vary the number of callers, and latencyMillis to see how well the
+ * client overlaps calls when Salesforce is slow.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+    @Param({"200"})
+    public int rows;
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    private MockSoapServer server;
+    private SfdcTransport transport;
+    private SfdcClient sfdcClient;
+    private final Map<String, Object> account = Collections.singletonMap("id", "001000000000000AAA");
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new MockSoapServer()
+                .setQueryRows(rows)
+                .setLatencyMillis(latencyMillis);
+        transport = SfdcTransport.builder().maxIdleConnections(16).build();
+        sfdcClient = new SfdcClient(server.getLoginUrl(), "user", "password", "token", transport);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sfdcClient.close();
+        transport.close();
+        server.close();
+    }
+
+    @Benchmark
+    public List<Map<String, String>> query() throws IOException {
+        return sfdcClient.query("SELECT Id, Name, NumberOfEmployees, Industry, LastModifiedDate FROM Account");
+    }
+
+    @Benchmark
+    public RecordSet queryRecords() throws IOException {
+        return sfdcClient.queryRecords("SELECT Id, Name, NumberOfEmployees, Industry, LastModifiedDate FROM Account");
+    }
+
+    @Benchmark
+    public void update() throws IOException {
+        sfdcClient.update("Account", account);
+    }
+}
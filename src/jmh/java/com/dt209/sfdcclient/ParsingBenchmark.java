@@ -0,0 +1,111 @@
+package com.dt209.sfdcclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Cost of turning a query response into rows, without HTTP: the DOM parsing the client used to do through
+ * {@link SfdcClient#getNodeList}, the pull parser building a HashMap per row, the pull parser filling a
+ * {@link RecordSet}, and the pull parser decoding typed values per the describe metadata.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParsingBenchmark {
+    @Param({"10", "200", "2000"})
+    public int rows;
+
+    private SfdcClient sfdcClient;
+    private byte[] response;
+    private final SoapRequest request = SoapRequest.ofXml("query", "<n1:query/>");
+    private final SObjectDescribe describe = new SObjectDescribe("Account", Arrays.asList(
+            new FieldDescribe("Id", "id", "tns:ID", false, false, false),
+            new FieldDescribe("Name", "string", "xsd:string", true, true, false),
+            new FieldDescribe("NumberOfEmployees", "int", "xsd:int", true, true, true),
+            new FieldDescribe("Industry", "picklist", "xsd:string", true, true, true),
+            new FieldDescribe("LastModifiedDate", "datetime", "xsd:dateTime", false, false, false)));
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sfdcClient = new SfdcClient("login.invalid", MockSoapServer.SOAP_PATH, "user", "password", "token");
+        response = MockSoapServer.queryResponse(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sfdcClient.close();
+    }
+
+    @Benchmark
+    public List<Map<String, String>> domNodeList() throws IOException {
+        NodeList nList = sfdcClient.getNodeList(new ByteArrayInputStream(response), "records", "query");
+        List<Map<String, String>> result = new ArrayList<>();
+        for (int outer = 0; outer < nList.getLength(); outer++) {
+            Node nNode = nList.item(outer);
+            if (nNode.getNodeType() == Node.ELEMENT_NODE) {
+                NodeList childNodes = nNode.getChildNodes();
+                Map<String, String> row = new HashMap<>();
+                for (int inner = 0; inner < childNodes.getLength(); inner++) {
+                    Node childNode = childNodes.item(inner);
+                    if (childNode.getNodeType() == Node.ELEMENT_NODE) {
+                        Element childElement = (Element) childNode;
+                        String key = childElement.getNodeName();
+                        if (key.contains(":")) {
+                            key = key.substring(key.indexOf(":") + 1);
+                        }
+                        row.put(key, childElement.getTextContent());
+                    }
+                }
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<Map<String, String>> streamingMaps() throws IOException {
+        List<Map<String, String>> result = new ArrayList<>();
+        SoapResponseParser.readQueryResult(new ByteArrayInputStream(response), result::add, request);
+        return result;
+    }
+
+    @Benchmark
+    public RecordSet streamingRecordSet() throws IOException {
+        RecordSet recordSet = new RecordSet();
+        SoapResponseParser.readQueryResult(new ByteArrayInputStream(response), recordSet.sink(), request);
+        return recordSet;
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> streamingTyped() throws IOException {
+        List<Map<String, Object>> result = new ArrayList<>();
+        SoapResponseParser.readQueryResult(new ByteArrayInputStream(response), describe, result::add, request, null);
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.text.StringEscapeUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of turning update calls into request bytes: the string concatenation the client used to do
+ * (makeObjectFieldXml plus {@link SfdcClient#getFullXml(String)}) against the streamed {@link SoapRequestBody}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    @Param({"1", "200"})
+    public int records;
+
+    private SfdcClient sfdcClient;
+    private List<Map<String, Object>> sfdcObjects;
+    private final Buffer buffer = new Buffer();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sfdcClient = new SfdcClient("login.invalid", MockSoapServer.SOAP_PATH, "user", "password", "token");
+        sfdcObjects = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            Map<String, Object> sfdcObject = new LinkedHashMap<>();
+            sfdcObject.put("id", String.format("001%012dAAA", i));
+            sfdcObject.put("Name", "Account & Co <" + i + ">");
+            sfdcObject.put("Description", "Imported from the \"legacy\" CRM, see ticket " + i);
+            sfdcObject.put("Industry", i % 2 == 0 ? "Energy" : "Banking");
+            sfdcObject.put("NumberOfEmployees", i % 1000);
+            sfdcObject.put("AnnualRevenue", 1_000_000.5 * i);
+            sfdcObject.put("IsPartner", i % 3 == 0);
+            sfdcObject.put("BillingCity", "Z\u00fcrich");
+            sfdcObjects.add(sfdcObject);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sfdcClient.close();
+    }
+
+    @Benchmark
+    public byte[] legacyStringXml() {
+        StringBuilder xml = new StringBuilder("<n1:update>");
+        for (Map<String, Object> sfdcObject : sfdcObjects) {
+            Map<String, Object> map = new HashMap<>(sfdcObject);
+            String id = map.remove("id").toString();
+            xml.append("<n1:sObjects>")
+                    .append("     <n2:type>Account</n2:type>")
+                    .append("     <n2:id>").append(id).append("</n2:id>")
+                    .append(makeObjectFieldXml(map))
+                    .append("</n1:sObjects>");
+        }
+        xml.append("</n1:update>");
+        // OkHttp encoded the whole String before sending it
+        return sfdcClient.getFullXml(xml.toString()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long streamedRequestBody() throws IOException {
+        SoapRequestBody body = new SoapRequestBody(MockSoapServer.SESSION_ID,
+                SfdcClient.updateRequest("Account", sfdcObjects));
+        body.writeTo(buffer);
+        long size = buffer.size();
+        buffer.clear();
+        return size;
+    }
+
+    /**
+     * As the client serialized fields before requests were streamed
+     */
+    private static StringBuilder makeObjectFieldXml(Map<String, Object> map) {
+        StringBuilder objectFields = new StringBuilder();
+        map.forEach((key, value) -> {
+            Class<?> valueClass = value.getClass();
+            if (String.class == valueClass || ClassUtils.isPrimitiveOrWrapper(valueClass)) {
+                objectFields.append("<");
+                objectFields.append(key);
+                objectFields.append(">");
+                objectFields.append(StringEscapeUtils.escapeXml10(value.toString()));
+                objectFields.append("</");
+                objectFields.append(key);
+                objectFields.append(">");
+            }
+        });
+        return objectFields;
+    }
+}
@@ -0,0 +1,43 @@
+package com.dt209.sfdcclient;
+
+/**
+ * Usage of an org wide limit as reported by Salesforce in the LimitInfoHeader of a response
+ */
+public class ApiLimit {
+    private final String type;
+    private final long current;
+    private final long limit;
+
+    public ApiLimit(String type, long current, long limit) {
+        this.type = type;
+        this.current = current;
+        this.limit = limit;
+    }
+
+    /**
+     * @return such as "API REQUESTS"
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return amount used so far in the current 24 hour window
+     */
+    public long getCurrent() {
+        return current;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getRemaining() {
+        return Math.max(0, limit - current);
+    }
+
+    @Override
+    public String toString() {
+        return type + ": " + current + "/" + limit;
+    }
+}
@@ -0,0 +1,572 @@
+package com.dt209.sfdcclient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * Bulk API 2.0 client for loads and extracts too large for SOAP calls. Uses the session and transport of a
+ * {@link SfdcClient}, so it logs in (and re-logs in) the same way.
+ * <ul>
+ *     <li>Loads encode the CSV from an iterator of records, one job per chunk of at most
+ *     {@link Builder#maxChunkBytes(long)}, as a job only takes a single upload. A chunk is held in memory until
+ *     it is uploaded, so that it can be sent again after a connection failure or a new login.</li>
+ *     <li>Jobs are polled with a growing delay until Salesforce is done with them</li>
+ *     <li>Query results and failed records are streamed a page at a time to a handler or a file</li>
+ * </ul>
+ */
+public class BulkClient {
+    /**
+     * First version with Bulk API 2.0 query jobs
+     */
+    public static final String DEFAULT_API_VERSION = "47.0";
+    /**
+     * Salesforce takes up to 150 MB per upload after base64 encoding it, which leaves about 100 MB of CSV
+     */
+    public static final long DEFAULT_MAX_CHUNK_BYTES = 100L * 1024 * 1024;
+    public static final long DEFAULT_POLL_INITIAL_MILLIS = 1_000;
+    public static final long DEFAULT_POLL_MAX_MILLIS = 30_000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(2);
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=UTF-8");
+    private static final MediaType CSV = MediaType.parse("text/csv");
+
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private final SfdcClient sfdcClient;
+    private final String apiVersion;
+    private final long maxChunkBytes;
+    private final long pollInitialMillis;
+    private final long pollMaxMillis;
+    private final long timeoutMillis;
+
+    /**
+     * Bulk client with all the defaults above
+     */
+    public BulkClient(SfdcClient sfdcClient) {
+        this(new Builder(sfdcClient));
+    }
+
+    private BulkClient(Builder builder) {
+        this.sfdcClient = builder.sfdcClient;
+        this.apiVersion = builder.apiVersion;
+        this.maxChunkBytes = builder.maxChunkBytes;
+        this.pollInitialMillis = builder.pollInitialMillis;
+        this.pollMaxMillis = builder.pollMaxMillis;
+        this.timeoutMillis = builder.timeoutMillis;
+    }
+
+    public static Builder builder(SfdcClient sfdcClient) {
+        return new Builder(sfdcClient);
+    }
+
+    /**
+     * Loads records with as many jobs as needed, then waits for all of them
+     * @param operation what to do with the records
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param externalIdFieldName only for {@link BulkOperation#UPSERT}, null otherwise
+     * @param records field names that exactly match those in Salesforce, the fields of the first record become the
+     *                CSV columns. Null values are left empty, which leaves the field unchanged. Other values are
+     *                formatted by {@link ValueCodec#encode(Object)}, which rejects types it can not write.
+     * @return final state of each job, in upload order
+     */
+    public List<BulkJob> load(BulkOperation operation, String sfdcObjectType, String externalIdFieldName,
+                              Iterator<Map<String, Object>> records) throws IOException {
+        if (!records.hasNext()) {
+            return Collections.emptyList();
+        }
+        CsvRows rows = new CsvRows(records);
+        List<BulkJob> jobs = new ArrayList<>();
+        while (rows.hasNext()) {
+            jobs.add(upload(operation, sfdcObjectType, externalIdFieldName, rows));
+        }
+        List<BulkJob> done = new ArrayList<>(jobs.size());
+        for (BulkJob job : jobs) {
+            done.add(awaitJob("ingest", job.getId()));
+        }
+        return done;
+    }
+
+    /**
+     * @return current state of an ingest job
+     */
+    public BulkJob getIngestJob(String jobId) throws IOException {
+        return BulkJob.of(call("GET", "ingest/" + jobId, null));
+    }
+
+    /**
+     * Streams the records of an ingest job that Salesforce could not process
+     * @param handler gets the record as uploaded plus sf__Id and sf__Error
+     * @return number of records
+     */
+    public long getFailedResults(String jobId, RecordHandler handler) throws IOException {
+        return readRows(url("ingest/" + jobId + "/failedResults/"), handler);
+    }
+
+    /**
+     * Streams the records of an ingest job that Salesforce processed
+     * @param handler gets the record as uploaded plus sf__Id and sf__Created
+     * @return number of records
+     */
+    public long getSuccessfulResults(String jobId, RecordHandler handler) throws IOException {
+        return readRows(url("ingest/" + jobId + "/successfulResults/"), handler);
+    }
+
+    /**
+     * Runs a query job and streams its results page by page
+     * @param queryString SOQL, relationship fields come back as dotted column names such as Owner.Name
+     * @param includeDeleted true to also return deleted and archived records (queryAll)
+     * @return number of records
+     */
+    public long query(String queryString, boolean includeDeleted, RecordHandler handler) throws IOException {
+        BulkJob job = awaitQuery(queryString, includeDeleted);
+        long count = 0;
+        String locator = null;
+        do {
+            Page page = readPage(job.getId(), locator, source -> readRows(source, handler));
+            count += page.count;
+            locator = page.locator;
+        } while (locator != null);
+        return count;
+    }
+
+    /**
+     * Runs a query job and writes its results to a CSV file, with a single header row
+     * @return number of records
+     */
+    public long queryToFile(String queryString, boolean includeDeleted, Path file) throws IOException {
+        BulkJob job = awaitQuery(queryString, includeDeleted);
+        long count = 0;
+        try (BufferedSink sink = Okio.buffer(Okio.sink(file))) {
+            String locator = null;
+            boolean first = true;
+            do {
+                boolean keepHeader = first;
+                Page page = readPage(job.getId(), locator, source -> {
+                    String header = source.readUtf8Line();
+                    if (header == null) {
+                        return 0;
+                    }
+                    if (keepHeader) {
+                        sink.writeUtf8(header).writeByte('\n');
+                    }
+                    sink.writeAll(source);
+                    return -1;
+                });
+                count += page.count;
+                locator = page.locator;
+                first = false;
+            } while (locator != null);
+        }
+        return count;
+    }
+
+    /**
+     * Creates one job and uploads as many rows as fit into a chunk
+     */
+    private BulkJob upload(BulkOperation operation, String sfdcObjectType, String externalIdFieldName, CsvRows rows)
+            throws IOException {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("object", sfdcObjectType);
+        if (externalIdFieldName != null) {
+            request.put("externalIdFieldName", externalIdFieldName);
+        }
+        request.put("contentType", "CSV");
+        request.put("operation", operation.getApiName());
+        request.put("lineEnding", "LF");
+        BulkJob job = BulkJob.of(call("POST", "ingest", request));
+        try {
+            CsvChunkBody body = new CsvChunkBody(rows, maxChunkBytes);
+            HttpUrl url = url("ingest/" + job.getId() + "/batches");
+            execute(session -> authorized(session, url).put(body).build()).close();
+            logger.fine(() -> "Uploaded " + body.rows + " rows, " + body.contentLength() + " bytes to bulk job " + job.getId());
+            return BulkJob.of(call("PATCH", "ingest/" + job.getId(), Collections.singletonMap("state", "UploadComplete")));
+        } catch (IOException | RuntimeException e) {
+            abort("ingest", job.getId());
+            throw e;
+        }
+    }
+
+    private BulkJob awaitQuery(String queryString, boolean includeDeleted) throws IOException {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("operation", includeDeleted ? "queryAll" : "query");
+        request.put("query", queryString);
+        BulkJob job = BulkJob.of(call("POST", "query", request));
+        job = awaitJob("query", job.getId());
+        if (!job.isSuccess()) {
+            throw new IOException("Bulk query job " + job.getId() + " ended " + job.getState() + ": "
+                    + job.getErrorMessage() + " for query " + queryString);
+        }
+        return job;
+    }
+
+    /**
+     * Polls until the job is done, waiting longer between polls the longer it takes
+     */
+    private BulkJob awaitJob(String kind, String jobId) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long delayMillis = pollInitialMillis;
+        while (true) {
+            BulkJob job = BulkJob.of(call("GET", kind + "/" + jobId, null));
+            if (job.isDone()) {
+                return job;
+            }
+            if (System.currentTimeMillis() + delayMillis > deadline) {
+                throw new IOException("Bulk " + kind + " job " + jobId + " still " + job.getState() + " after "
+                        + timeoutMillis + "ms");
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for bulk " + kind + " job " + jobId, e);
+            }
+            delayMillis = Math.min(pollMaxMillis, delayMillis + delayMillis / 2);
+        }
+    }
+
+    private void abort(String kind, String jobId) {
+        try {
+            call("PATCH", kind + "/" + jobId, Collections.singletonMap("state", BulkJob.ABORTED));
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Could not abort bulk " + kind + " job " + jobId, e);
+        }
+    }
+
+    private Page readPage(String jobId, String locator, PageReader reader) throws IOException {
+        HttpUrl.Builder url = url("query/" + jobId + "/results").newBuilder();
+        if (locator != null) {
+            url.addQueryParameter("locator", locator);
+        }
+        HttpUrl pageUrl = url.build();
+        try (Response response = execute(session -> authorized(session, pageUrl).get().build())) {
+            long count = reader.read(response.body().source());
+            if (count < 0) {
+                String numberOfRecords = response.header("Sforce-NumberOfRecords");
+                count = numberOfRecords == null ? 0 : Long.parseLong(numberOfRecords.trim());
+            }
+            String next = response.header("Sforce-Locator");
+            return new Page(count, next == null || next.isEmpty() || "null".equals(next) ? null : next);
+        }
+    }
+
+    private long readRows(HttpUrl url, RecordHandler handler) throws IOException {
+        try (Response response = execute(session -> authorized(session, url).get().build())) {
+            return readRows(response.body().source(), handler);
+        }
+    }
+
+    private static long readRows(BufferedSource source, RecordHandler handler) throws IOException {
+        Csv.RowReader reader = new Csv.RowReader(
+                new BufferedReader(new InputStreamReader(source.inputStream(), StandardCharsets.UTF_8)));
+        List<String> header = reader.readRow();
+        if (header == null) {
+            return 0;
+        }
+        long count = 0;
+        for (List<String> row = reader.readRow(); row != null; row = reader.readRow()) {
+            Map<String, String> record = new HashMap<>();
+            for (int i = 0; i < header.size() && i < row.size(); i++) {
+                record.put(header.get(i), row.get(i));
+            }
+            handler.onRecord(record);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Sends a JSON request to the jobs resource
+     * @param body null for none
+     */
+    private Map<String, Object> call(String method, String path, Map<String, ?> body) throws IOException {
+        HttpUrl url = url(path);
+        RequestBody requestBody = body == null ? null : RequestBody.create(JSON, Json.write(body));
+        try (Response response = execute(session -> authorized(session, url).method(method, requestBody).build())) {
+            return Json.parseObject(response.body().string());
+        }
+    }
+
+    /**
+     * Sends a request built for the current session, logging in again once if the session was rejected. The
+     * session is checked before the body is read, so nothing was handed to a handler yet when it is sent again.
+     * @return successful response, to be closed by the caller
+     */
+    private Response execute(RequestFactory factory) throws IOException {
+        SfdcSession session = sfdcClient.getSession();
+        try {
+            return execute(factory.create(session));
+        } catch (SfdcFaultException e) {
+            if (!e.isInvalidSession()) {
+                throw e;
+            }
+            return execute(factory.create(sfdcClient.refreshSession(session)));
+        }
+    }
+
+    private Response execute(Request request) throws IOException {
+        Response response = sfdcClient.getTransport().getHttpClient().newCall(request).execute();
+        try {
+            checkResponse(response, request);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    private static Request.Builder authorized(SfdcSession session, HttpUrl url) {
+        return new Request.Builder()
+                .url(url)
+                .header("Authorization", "Bearer " + session.getSessionId())
+                .header("Accept", "application/json");
+    }
+
+    /**
+     * Turns error responses ([{"errorCode": ..., "message": ...}]) into the same fault exceptions the SOAP calls throw
+     */
+    private static void checkResponse(Response response, Request request) throws IOException {
+        if (response.isSuccessful()) {
+            return;
+        }
+        String body = response.body().string();
+        String errorCode = "HTTP_" + response.code();
+        String message = body;
+        try {
+            Object errors = Json.parse(body);
+            if (errors instanceof List && !((List<?>) errors).isEmpty() && ((List<?>) errors).get(0) instanceof Map) {
+                Map<?, ?> error = (Map<?, ?>) ((List<?>) errors).get(0);
+                errorCode = String.valueOf(error.get("errorCode"));
+                message = String.valueOf(error.get("message"));
+            }
+        } catch (IOException e) {
+            // Not JSON, such as a maintenance page, report the body as is
+        }
+        if (response.code() == 503 && errorCode.startsWith("HTTP_")) {
+            errorCode = SfdcServerUnavailableException.FAULT_CODE;
+        }
+        throw SfdcFaultException.of(errorCode, message, request.method() + " " + request.url());
+    }
+
+    private HttpUrl url(String jobsPath) throws IOException {
+        HttpUrl serverUrl = HttpUrl.parse(sfdcClient.getSession().getServerUrl());
+        if (serverUrl == null) {
+            throw new IOException("Can not derive the instance URL from " + sfdcClient.getSession().getServerUrl());
+        }
+        return new HttpUrl.Builder()
+                .scheme(serverUrl.scheme())
+                .host(serverUrl.host())
+                .port(serverUrl.port())
+                .addPathSegments("services/data/v" + apiVersion + "/jobs/")
+                .addPathSegments(jobsPath)
+                .build();
+    }
+
+    @FunctionalInterface
+    private interface RequestFactory {
+        Request create(SfdcSession session);
+    }
+
+    @FunctionalInterface
+    private interface PageReader {
+        /**
+         * @return number of records read, -1 to take it from the Sforce-NumberOfRecords header
+         */
+        long read(BufferedSource source) throws IOException;
+    }
+
+    private static class Page {
+        private final long count;
+        private final String locator;
+
+        private Page(long count, String locator) {
+            this.count = count;
+            this.locator = locator;
+        }
+    }
+
+    /**
+     * Encodes records as CSV rows one at a time, so that a row that does not fit into a chunk can start the next one
+     */
+    private static class CsvRows {
+        private final Iterator<Map<String, Object>> records;
+        private List<String> fields;
+        private byte[] header;
+        private byte[] next;
+
+        private CsvRows(Iterator<Map<String, Object>> records) {
+            this.records = records;
+        }
+
+        boolean hasNext() {
+            return next != null || records.hasNext();
+        }
+
+        byte[] header() {
+            peek();
+            return header;
+        }
+
+        /**
+         * @return the next row, encoded, without consuming it
+         */
+        byte[] peek() {
+            if (next == null) {
+                if (!records.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                next = encode(records.next());
+            }
+            return next;
+        }
+
+        void consume() {
+            next = null;
+        }
+
+        private byte[] encode(Map<String, Object> record) {
+            if (fields == null) {
+                fields = new ArrayList<>(record.keySet());
+                StringBuilder row = new StringBuilder();
+                for (String field : fields) {
+                    if (row.length() > 0) {
+                        row.append(',');
+                    }
+                    Csv.appendField(row, field);
+                }
+                header = row.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+            }
+            for (String field : record.keySet()) {
+                if (!fields.contains(field)) {
+                    throw new IllegalArgumentException("Field " + field + " is not in the CSV header " + fields
+                            + ", all records must have the fields of the first one");
+                }
+            }
+            StringBuilder row = new StringBuilder();
+            for (int i = 0; i < fields.size(); i++) {
+                if (i > 0) {
+                    row.append(',');
+                }
+                String value = ValueCodec.encode(record.get(fields.get(i)));
+                if (value != null) {
+                    Csv.appendField(row, value);
+                }
+            }
+            return row.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Takes rows until the next one would not fit and keeps them, so that OkHttp can send the upload again after
+     * a connection failure and a rejected session can be retried
+     */
+    private static class CsvChunkBody extends RequestBody {
+        private final Buffer csv = new Buffer();
+        private long rows;
+
+        private CsvChunkBody(CsvRows rows, long maxBytes) {
+            csv.write(rows.header());
+            while (rows.hasNext()) {
+                byte[] row = rows.peek();
+                if (this.rows > 0 && csv.size() + row.length > maxBytes) {
+                    break;
+                }
+                csv.write(row);
+                rows.consume();
+                this.rows++;
+            }
+        }
+
+        @Override
+        public MediaType contentType() {
+            return CSV;
+        }
+
+        @Override
+        public long contentLength() {
+            return csv.size();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // Shares the segments rather than copying the bytes, csv keeps them for the next attempt
+            csv.copyTo(sink.buffer(), 0, csv.size());
+            sink.emitCompleteSegments();
+        }
+    }
+
+    public static class Builder {
+        private final SfdcClient sfdcClient;
+        private String apiVersion = DEFAULT_API_VERSION;
+        private long maxChunkBytes = DEFAULT_MAX_CHUNK_BYTES;
+        private long pollInitialMillis = DEFAULT_POLL_INITIAL_MILLIS;
+        private long pollMaxMillis = DEFAULT_POLL_MAX_MILLIS;
+        private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+        private Builder(SfdcClient sfdcClient) {
+            this.sfdcClient = sfdcClient;
+        }
+
+        /**
+         * @param apiVersion REST API version such as 47.0, ingest jobs need 41.0 or newer, query jobs 47.0 or newer
+         */
+        public Builder apiVersion(String apiVersion) {
+            this.apiVersion = apiVersion;
+            return this;
+        }
+
+        /**
+         * @param maxChunkBytes CSV bytes uploaded per job, a record that does not fit starts a new job. One chunk
+         *                      is held in memory at a time.
+         */
+        public Builder maxChunkBytes(long maxChunkBytes) {
+            this.maxChunkBytes = maxChunkBytes;
+            return this;
+        }
+
+        /**
+         * @param pollInitialMillis Delay before polling a job again the first time, grows by half on each poll
+         * @param pollMaxMillis Longest delay between polls
+         */
+        public Builder poll(long pollInitialMillis, long pollMaxMillis) {
+            this.pollInitialMillis = pollInitialMillis;
+            this.pollMaxMillis = pollMaxMillis;
+            return this;
+        }
+
+        /**
+         * @param timeoutMillis How long to wait for a job to finish before giving up (the job keeps running)
+         */
+        public Builder timeoutMillis(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        public BulkClient build() {
+            return new BulkClient(this);
+        }
+    }
+}
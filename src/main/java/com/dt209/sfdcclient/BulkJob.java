@@ -0,0 +1,108 @@
+package com.dt209.sfdcclient;
+
+import java.util.Map;
+
+/**
+ * State of a Bulk API 2.0 ingest or query job, as last read from Salesforce
+ */
+public class BulkJob {
+    public static final String JOB_COMPLETE = "JobComplete";
+    public static final String FAILED = "Failed";
+    public static final String ABORTED = "Aborted";
+
+    private final String id;
+    private final String object;
+    private final String operation;
+    private final String state;
+    private final long numberRecordsProcessed;
+    private final long numberRecordsFailed;
+    private final String errorMessage;
+
+    public BulkJob(String id, String object, String operation, String state, long numberRecordsProcessed,
+                   long numberRecordsFailed, String errorMessage) {
+        this.id = id;
+        this.object = object;
+        this.operation = operation;
+        this.state = state;
+        this.numberRecordsProcessed = numberRecordsProcessed;
+        this.numberRecordsFailed = numberRecordsFailed;
+        this.errorMessage = errorMessage;
+    }
+
+    static BulkJob of(Map<String, Object> json) {
+        return new BulkJob(string(json, "id"), string(json, "object"), string(json, "operation"),
+                string(json, "state"), number(json, "numberRecordsProcessed"), number(json, "numberRecordsFailed"),
+                string(json, "errorMessage"));
+    }
+
+    private static String string(Map<String, Object> json, String key) {
+        Object value = json.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    private static long number(Map<String, Object> json, String key) {
+        Object value = json.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return sObject type, null for query jobs
+     */
+    public String getObject() {
+        return object;
+    }
+
+    /**
+     * @return such as insert, upsert or query
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return Open, UploadComplete, InProgress, JobComplete, Failed or Aborted
+     */
+    public String getState() {
+        return state;
+    }
+
+    public long getNumberRecordsProcessed() {
+        return numberRecordsProcessed;
+    }
+
+    /**
+     * @return always 0 for query jobs
+     */
+    public long getNumberRecordsFailed() {
+        return numberRecordsFailed;
+    }
+
+    /**
+     * @return why the job failed, null if it did not
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * @return true once Salesforce is done with the job, successfully or not
+     */
+    public boolean isDone() {
+        return JOB_COMPLETE.equals(state) || FAILED.equals(state) || ABORTED.equals(state);
+    }
+
+    public boolean isSuccess() {
+        return JOB_COMPLETE.equals(state);
+    }
+
+    @Override
+    public String toString() {
+        return "BulkJob{id=" + id + ", object=" + object + ", operation=" + operation + ", state=" + state
+                + ", processed=" + numberRecordsProcessed + ", failed=" + numberRecordsFailed
+                + (errorMessage == null ? "" : ", errorMessage=" + errorMessage) + "}";
+    }
+}
@@ -0,0 +1,25 @@
+package com.dt209.sfdcclient;
+
+/**
+ * Operations of Bulk API 2.0 ingest jobs
+ */
+public enum BulkOperation {
+    INSERT("insert"),
+    UPDATE("update"),
+    UPSERT("upsert"),
+    DELETE("delete"),
+    HARD_DELETE("hardDelete");
+
+    private final String apiName;
+
+    BulkOperation(String apiName) {
+        this.apiName = apiName;
+    }
+
+    /**
+     * @return name used in the job request, such as hardDelete
+     */
+    public String getApiName() {
+        return apiName;
+    }
+}
@@ -0,0 +1,119 @@
+package com.dt209.sfdcclient;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures one call for a {@link SfdcListener}. Only created when a listener is set, so that calls without one
+ * pay nothing. Time spent blocked reading the response stream counts as network time, the rest of the time after
+ * the response headers arrived counts as parse time.
+ */
+final class CallRecorder implements SoapResponseParser.HeaderListener {
+    private static final Logger logger = Logger.getLogger(CallRecorder.class.getName());
+
+    private final SfdcListener listener;
+    private final String operation;
+    private final long startNanos = System.nanoTime();
+    private long requestBytes = -1;
+    private SoapRequestBody requestBody;
+    private long responseStartNanos;
+    private MeteredInputStream responseStream;
+
+    CallRecorder(SfdcListener listener, String operation) {
+        this.listener = listener;
+        this.operation = operation;
+    }
+
+    /**
+     * @return request body that counts the bytes it writes
+     */
+    SoapRequestBody requestBody(String sessionId, SoapRequest request) {
+        requestBody = new SoapRequestBody(sessionId, request, true);
+        return requestBody;
+    }
+
+    void requestBytes(long requestBytes) {
+        this.requestBytes = requestBytes;
+    }
+
+    /**
+     * Call when the response headers arrived
+     * @return the response body, measured
+     */
+    InputStream responseStream(InputStream inputStream) {
+        responseStartNanos = System.nanoTime();
+        responseStream = new MeteredInputStream(inputStream);
+        return responseStream;
+    }
+
+    /**
+     * @param error null if the call succeeded
+     */
+    void finished(Throwable error) {
+        long endNanos = System.nanoTime();
+        long networkNanos;
+        long parseNanos;
+        long responseBytes = 0;
+        if (responseStream == null) {
+            networkNanos = endNanos - startNanos;
+            parseNanos = 0;
+        } else {
+            networkNanos = responseStartNanos - startNanos + responseStream.readNanos;
+            parseNanos = endNanos - responseStartNanos - responseStream.readNanos;
+            responseBytes = responseStream.bytes;
+        }
+        long sentBytes = requestBody == null ? requestBytes : requestBody.getBytesWritten();
+        SfdcCallEvent event = new SfdcCallEvent(operation, sentBytes, responseBytes, networkNanos, parseNanos, error);
+        try {
+            listener.onCall(event);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Listener failed on " + event, e);
+        }
+    }
+
+    @Override
+    public void limitInfo(String type, long current, long limit) {
+        try {
+            listener.onApiLimit(new ApiLimit(type, current, limit));
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Listener failed on limit " + type, e);
+        }
+    }
+
+    /**
+     * Only read by the thread that reads the response, no need for synchronization
+     */
+    private static class MeteredInputStream extends FilterInputStream {
+        private long bytes;
+        private long readNanos;
+
+        private MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int read = super.read();
+            readNanos += System.nanoTime() - start;
+            if (read >= 0) {
+                bytes++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(buffer, offset, length);
+            readNanos += System.nanoTime() - start;
+            if (read > 0) {
+                bytes += read;
+            }
+            return read;
+        }
+    }
+}
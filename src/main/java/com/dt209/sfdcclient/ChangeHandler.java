@@ -0,0 +1,29 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Receives the changes {@link IncrementalSync} finds. A sync that fails part way is repeated from the last
+ * checkpoint, so the same change can be passed more than once: apply them as upserts and idempotent deletes.
+ */
+public interface ChangeHandler {
+    /**
+     * Called before every record of the type is passed again, on its first sync and when Salesforce purged the
+     * deletions since the last one. Records passed before but not during this sync were deleted meanwhile, a
+     * mirror drops them once the sync returns or starts over from an empty copy here.
+     */
+    default void onFullSync(String sfdcObjectType) throws IOException {
+    }
+
+    /**
+     * @param record a created or updated record with the fields the sync was asked for, not retained by the sync
+     */
+    void onUpdated(Map<String, String> record) throws IOException;
+
+    /**
+     * @param deletedDate when the record was deleted, as reported by Salesforce
+     */
+    void onDeleted(String id, Instant deletedDate) throws IOException;
+}
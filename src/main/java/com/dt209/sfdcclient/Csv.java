@@ -0,0 +1,120 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RFC 4180 CSV as used by the Bulk API: comma separated, fields with commas, quotes or line breaks quoted,
+ * quotes doubled. Rows end with LF, CRLF is accepted when reading.
+ */
+final class Csv {
+    private Csv() {
+    }
+
+    /**
+     * Appends one field, quoted if needed, without separator
+     */
+    static void appendField(StringBuilder row, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            row.append(value);
+            return;
+        }
+        row.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        row.append('"');
+    }
+
+    /**
+     * Reads rows one at a time from a stream, only the current row is held in memory
+     */
+    static final class RowReader {
+        private final Reader reader;
+        private int next = -2;
+
+        /**
+         * @param reader should be buffered
+         */
+        RowReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return fields of the next row, null at the end of the stream
+         */
+        List<String> readRow() throws IOException {
+            int c = read();
+            if (c < 0) {
+                return null;
+            }
+            List<String> row = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            boolean wasQuoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        throw new IOException("CSV ends inside a quoted field");
+                    }
+                    if (c == '"') {
+                        int after = read();
+                        if (after == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = after;
+                            continue;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0 && !wasQuoted) {
+                    quoted = true;
+                    wasQuoted = true;
+                } else if (c == ',') {
+                    row.add(field.toString());
+                    field.setLength(0);
+                    wasQuoted = false;
+                } else if (c == '\n' || c < 0) {
+                    row.add(field.toString());
+                    return row;
+                } else if (c == '\r') {
+                    int after = read();
+                    if (after != '\n') {
+                        unread(after);
+                    }
+                    row.add(field.toString());
+                    return row;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (next != -2) {
+                int c = next;
+                next = -2;
+                return c;
+            }
+            return reader.read();
+        }
+
+        private void unread(int c) {
+            next = c;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.dt209.sfdcclient;
+
+import java.util.List;
+
+/**
+ * Outcome of deleting a single record
+ */
+public class DeleteResult extends SaveResult {
+
+    public DeleteResult(String id, boolean success, List<SfdcError> errors) {
+        super(id, success, errors);
+    }
+}
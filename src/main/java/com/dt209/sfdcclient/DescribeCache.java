@@ -0,0 +1,130 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of describeSObject results per sObject type, see {@link SfdcClient#setDescribeCache(DescribeCache)}.
+ * Metadata rarely changes, so one describe call per type and TTL is enough to decode and encode typed values.
+ * Concurrent misses for the same type share a single call to Salesforce.
+ */
+public class DescribeCache {
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<SObjectDescribe>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public DescribeCache() {
+        this(DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * @param ttlMillis how long a describe result is used before it is loaded again
+     */
+    public DescribeCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param sfdcObjectType not case sensitive
+     * @return cached describe of the type, loading it if not cached or expired
+     */
+    public SObjectDescribe get(String sfdcObjectType, Loader loader) throws IOException {
+        String key = sfdcObjectType.toLowerCase(Locale.ROOT);
+        SObjectDescribe cached = getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        CompletableFuture<SObjectDescribe> future = new CompletableFuture<>();
+        CompletableFuture<SObjectDescribe> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return await(inFlight, sfdcObjectType);
+        }
+        try {
+            SObjectDescribe describe = loader.load();
+            entries.put(key, new Entry(describe, System.currentTimeMillis() + ttlMillis));
+            future.complete(describe);
+            return describe;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * @param sfdcObjectType not case sensitive
+     * @return cached describe of the type, null if not cached or expired, never calls Salesforce
+     */
+    public SObjectDescribe getIfPresent(String sfdcObjectType) {
+        Entry entry = entries.get(sfdcObjectType.toLowerCase(Locale.ROOT));
+        return entry != null && System.currentTimeMillis() < entry.expiresAtMillis ? entry.describe : null;
+    }
+
+    /**
+     * Drops the describe of the type, such as after adding a custom field to it
+     */
+    public void invalidate(String sfdcObjectType) {
+        entries.remove(sfdcObjectType.toLowerCase(Locale.ROOT));
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "DescribeCache{hits=" + getHitCount() + ", misses=" + getMissCount() + ", types=" + entries.size() + "}";
+    }
+
+    private static SObjectDescribe await(CompletableFuture<SObjectDescribe> future, String sfdcObjectType)
+            throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Could not describe " + sfdcObjectType + " " + cause.getMessage(), cause);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        SObjectDescribe load() throws IOException;
+    }
+
+    private static class Entry {
+        private final SObjectDescribe describe;
+        private final long expiresAtMillis;
+
+        private Entry(SObjectDescribe describe, long expiresAtMillis) {
+            this.describe = describe;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.dt209.sfdcclient;
+
+/**
+ * The parts of a field's describe metadata that decide how its values are read and written, see
+ * {@link SObjectDescribe}
+ */
+public class FieldDescribe {
+    private final String name;
+    private final String type;
+    private final String soapType;
+    private final boolean createable;
+    private final boolean updateable;
+    private final boolean nillable;
+
+    public FieldDescribe(String name, String type, String soapType, boolean createable, boolean updateable,
+                         boolean nillable) {
+        this.name = name;
+        this.type = type;
+        this.soapType = soapType;
+        this.createable = createable;
+        this.updateable = updateable;
+        this.nillable = nillable;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Salesforce field type, such as string, picklist, currency, date or datetime
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return XML schema type of the values, such as xsd:string, xsd:double, xsd:date, xsd:dateTime or tns:ID
+     */
+    public String getSoapType() {
+        return soapType;
+    }
+
+    public boolean isCreateable() {
+        return createable;
+    }
+
+    public boolean isUpdateable() {
+        return updateable;
+    }
+
+    public boolean isNillable() {
+        return nillable;
+    }
+
+    @Override
+    public String toString() {
+        return name + ":" + type + "(" + soapType + ")";
+    }
+}
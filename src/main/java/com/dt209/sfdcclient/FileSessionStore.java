@@ -0,0 +1,101 @@
+package com.dt209.sfdcclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Keeps sessions in a properties file of key to session ID, server URL and expiry. Session IDs are credentials:
+ * the file is only readable by its owner where the file system supports that, and its content can be encrypted
+ * by passing an {@link Encryption}, for example one backed by javax.crypto and a key from the environment.
+ */
+public class FileSessionStore implements SessionStore {
+    /**
+     * Turns the file content into what is written to disk and back
+     */
+    public interface Encryption {
+        Encryption NONE = new Encryption() {
+            @Override
+            public byte[] encrypt(byte[] plain) {
+                return plain;
+            }
+
+            @Override
+            public byte[] decrypt(byte[] encrypted) {
+                return encrypted;
+            }
+        };
+
+        byte[] encrypt(byte[] plain) throws IOException;
+
+        /**
+         * @throws IOException if the content was not encrypted with the same key, the saved sessions are then ignored
+         */
+        byte[] decrypt(byte[] encrypted) throws IOException;
+    }
+
+    private final Path file;
+    private final Encryption encryption;
+
+    public FileSessionStore(Path file) {
+        this(file, Encryption.NONE);
+    }
+
+    public FileSessionStore(Path file, Encryption encryption) {
+        this.file = file;
+        this.encryption = encryption;
+    }
+
+    @Override
+    public synchronized SfdcSession load(String key) throws IOException {
+        String value = loadSessions().getProperty(key);
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split(" ", 3);
+        if (parts.length != 3) {
+            throw new IOException("Saved session of " + key + " in " + file + " is not valid");
+        }
+        try {
+            return new SfdcSession(parts[2], parts[1], Long.parseLong(parts[0]));
+        } catch (NumberFormatException e) {
+            throw new IOException("Saved session of " + key + " in " + file + " has no valid expiry", e);
+        }
+    }
+
+    @Override
+    public synchronized void save(String key, SfdcSession session) throws IOException {
+        Properties sessions = loadSessionsOrEmpty();
+        // Session IDs hold no spaces, URLs neither once encoded
+        sessions.setProperty(key, session.getExpiresAtMillis() + " " + session.getServerUrl() + " " + session.getSessionId());
+        store(sessions);
+    }
+
+    private Properties loadSessions() throws IOException {
+        Properties sessions = new Properties();
+        if (Files.exists(file)) {
+            sessions.load(new ByteArrayInputStream(encryption.decrypt(Files.readAllBytes(file))));
+        }
+        return sessions;
+    }
+
+    /**
+     * A file that can not be read, such as one encrypted with another key, is replaced rather than failing the save
+     */
+    private Properties loadSessionsOrEmpty() {
+        try {
+            return loadSessions();
+        } catch (IOException | IllegalArgumentException e) {
+            return new Properties();
+        }
+    }
+
+    private void store(Properties sessions) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sessions.store(out, "Salesforce sessions");
+        AtomicFiles.write(file, encryption.encrypt(out.toByteArray()));
+    }
+}
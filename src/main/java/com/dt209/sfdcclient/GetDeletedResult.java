@@ -0,0 +1,69 @@
+package com.dt209.sfdcclient;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records of one sObject type that were deleted in a time window,
+ * see {@link SfdcClient#getDeleted(String, Instant, Instant)}
+ */
+public class GetDeletedResult {
+    private final List<DeletedRecord> deletedRecords;
+    private final Instant earliestDateAvailable;
+    private final Instant latestDateCovered;
+
+    public GetDeletedResult(List<DeletedRecord> deletedRecords, Instant earliestDateAvailable,
+                            Instant latestDateCovered) {
+        this.deletedRecords = Collections.unmodifiableList(deletedRecords);
+        this.earliestDateAvailable = earliestDateAvailable;
+        this.latestDateCovered = latestDateCovered;
+    }
+
+    public List<DeletedRecord> getDeletedRecords() {
+        return deletedRecords;
+    }
+
+    /**
+     * @return deletions before this were purged from the recycle bin and are not reported any more
+     */
+    public Instant getEarliestDateAvailable() {
+        return earliestDateAvailable;
+    }
+
+    /**
+     * @return end of the window actually covered, start the next window here
+     */
+    public Instant getLatestDateCovered() {
+        return latestDateCovered;
+    }
+
+    @Override
+    public String toString() {
+        return "GetDeletedResult{deletedRecords=" + deletedRecords.size() + ", earliestDateAvailable="
+                + earliestDateAvailable + ", latestDateCovered=" + latestDateCovered + "}";
+    }
+
+    public static class DeletedRecord {
+        private final String id;
+        private final Instant deletedDate;
+
+        public DeletedRecord(String id, Instant deletedDate) {
+            this.id = id;
+            this.deletedDate = deletedDate;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Instant getDeletedDate() {
+            return deletedDate;
+        }
+
+        @Override
+        public String toString() {
+            return id + "@" + deletedDate;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.dt209.sfdcclient;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * IDs of the records of one sObject type that were created or updated in a time window,
+ * see {@link SfdcClient#getUpdated(String, Instant, Instant)}
+ */
+public class GetUpdatedResult {
+    private final List<String> ids;
+    private final Instant latestDateCovered;
+
+    public GetUpdatedResult(List<String> ids, Instant latestDateCovered) {
+        this.ids = Collections.unmodifiableList(ids);
+        this.latestDateCovered = latestDateCovered;
+    }
+
+    public List<String> getIds() {
+        return ids;
+    }
+
+    /**
+     * @return end of the window actually covered, start the next window here
+     */
+    public Instant getLatestDateCovered() {
+        return latestDateCovered;
+    }
+
+    @Override
+    public String toString() {
+        return "GetUpdatedResult{ids=" + ids.size() + ", latestDateCovered=" + latestDateCovered + "}";
+    }
+}
@@ -0,0 +1,223 @@
+package com.dt209.sfdcclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a local copy of sObject types up to date by reading only what changed since the last run, so the cost of a
+ * sync grows with the number of changes rather than with the size of the table.
+ * <ul>
+ *     <li>The first sync of a type reads all records</li>
+ *     <li>Later syncs ask getUpdated and getDeleted for the IDs changed since the checkpoint, then retrieve the
+ *     changed records MAX_RETRIEVE_IDS at a time</li>
+ *     <li>Types that are not replicateable, windows over 30 days and windows with more than 600,000 changes fall
+ *     back to a queryAll on SystemModstamp</li>
+ *     <li>When Salesforce already purged deletions since the checkpoint, the type is read in full again, as the
+ *     records deleted meanwhile can no longer be reported</li>
+ *     <li>The checkpoint of each type is stored in a properties file once all changes were handled, so a restarted
+ *     sync resumes where the last successful one stopped</li>
+ * </ul>
+ */
+public class IncrementalSync {
+    /**
+     * getUpdated and getDeleted round both ends of the window down to the minute
+     */
+    public static final Duration MIN_WINDOW = Duration.ofMinutes(1);
+
+    private static final Set<String> FALLBACK_FAULT_CODES = new HashSet<>(Arrays.asList(
+            "INVALID_REPLICATION_DATE", "EXCEEDED_ID_LIMIT", "REPLICATION_NOT_ENABLED", "INVALID_TYPE"));
+    private static final DateTimeFormatter SOQL_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private final SfdcClient sfdcClient;
+    private final Path checkpointFile;
+
+    /**
+     * @param checkpointFile properties file of sObject type to checkpoint, created on the first sync
+     */
+    public IncrementalSync(SfdcClient sfdcClient, Path checkpointFile) {
+        this.sfdcClient = sfdcClient;
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Passes all changes since the last sync of the type to the handler, then moves its checkpoint
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param fields Salesforce Object fields to pass to the handler, Id is always included
+     */
+    public SyncResult sync(String sfdcObjectType, Collection<String> fields, ChangeHandler handler) throws IOException {
+        List<String> fieldList = new ArrayList<>(fields);
+        if (fieldList.stream().noneMatch("Id"::equalsIgnoreCase)) {
+            fieldList.add(0, "Id");
+        }
+        Instant end = sfdcClient.getServerTimestamp().truncatedTo(ChronoUnit.SECONDS);
+        Instant start = getCheckpoint(sfdcObjectType);
+        SyncResult result;
+        if (start == null) {
+            result = fullSync(sfdcObjectType, fieldList, end, handler);
+        } else if (Duration.between(start, end).compareTo(MIN_WINDOW) < 0) {
+            return new SyncResult(sfdcObjectType, SyncResult.Mode.NONE, start, start, 0, 0);
+        } else {
+            try {
+                result = replicationSync(sfdcObjectType, fieldList, start, end, handler);
+            } catch (SfdcFaultException e) {
+                if (!FALLBACK_FAULT_CODES.contains(e.getFaultCode())) {
+                    throw e;
+                }
+                logger.info(() -> "Replication calls can not sync " + sfdcObjectType + " since " + start + " ("
+                        + e.getFaultCode() + "), querying on SystemModstamp instead");
+                result = systemModstampSync(sfdcObjectType, fieldList, start, end, handler);
+            }
+        }
+        setCheckpoint(sfdcObjectType, result.getTo());
+        logger.fine(result::toString);
+        return result;
+    }
+
+    /**
+     * @return end of the window of the last successful sync of the type, null if it was never synced
+     */
+    public Instant getCheckpoint(String sfdcObjectType) throws IOException {
+        String checkpoint = loadCheckpoints().getProperty(sfdcObjectType);
+        if (checkpoint == null) {
+            return null;
+        }
+        try {
+            return Instant.parse(checkpoint);
+        } catch (DateTimeException e) {
+            throw new IOException("Checkpoint " + checkpoint + " of " + sfdcObjectType + " in " + checkpointFile
+                    + " is not a valid instant", e);
+        }
+    }
+
+    /**
+     * @param checkpoint null to read all records again on the next sync
+     */
+    public synchronized void setCheckpoint(String sfdcObjectType, Instant checkpoint) throws IOException {
+        Properties checkpoints = loadCheckpoints();
+        if (checkpoint == null) {
+            checkpoints.remove(sfdcObjectType);
+        } else {
+            checkpoints.setProperty(sfdcObjectType, checkpoint.toString());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        checkpoints.store(out, "Incremental sync checkpoints, end of the last synced window per sObject type");
+        AtomicFiles.write(checkpointFile, out.toByteArray());
+    }
+
+    private synchronized Properties loadCheckpoints() throws IOException {
+        Properties checkpoints = new Properties();
+        if (Files.exists(checkpointFile)) {
+            try (InputStream in = Files.newInputStream(checkpointFile)) {
+                checkpoints.load(in);
+            }
+        }
+        return checkpoints;
+    }
+
+    private SyncResult fullSync(String sfdcObjectType, List<String> fields, Instant end, ChangeHandler handler)
+            throws IOException {
+        String queryString = "SELECT " + String.join(",", fields) + " FROM " + sfdcObjectType
+                + " WHERE SystemModstamp <= " + SOQL_DATE_TIME.format(end);
+        handler.onFullSync(sfdcObjectType);
+        long updated = 0;
+        try (QueryCursor cursor = sfdcClient.queryCursor(queryString, new QueryOptions())) {
+            for (List<Map<String, String>> batch = cursor.nextBatch(); batch != null; batch = cursor.nextBatch()) {
+                for (Map<String, String> record : batch) {
+                    handler.onUpdated(record);
+                    updated++;
+                }
+            }
+        }
+        return new SyncResult(sfdcObjectType, SyncResult.Mode.FULL, null, end, updated, 0);
+    }
+
+    private SyncResult replicationSync(String sfdcObjectType, List<String> fields, Instant start, Instant end,
+                                       ChangeHandler handler) throws IOException {
+        GetUpdatedResult updated = sfdcClient.getUpdated(sfdcObjectType, start, end);
+        GetDeletedResult deleted = sfdcClient.getDeleted(sfdcObjectType, start, end);
+        if (deleted.getEarliestDateAvailable() != null && deleted.getEarliestDateAvailable().isAfter(start)) {
+            logger.warning(() -> "Deletions of " + sfdcObjectType + " before " + deleted.getEarliestDateAvailable()
+                    + " were purged, reading all records again since records deleted after " + start
+                    + " can not be reported");
+            // A full sync that fails part way must not be followed by an incremental one from the old checkpoint
+            setCheckpoint(sfdcObjectType, null);
+            return fullSync(sfdcObjectType, fields, end, handler);
+        }
+        // Records updated and then deleted in the window are not found by retrieve, only reported as deleted
+        long found = sfdcClient.retrieve(fields, sfdcObjectType, updated.getIds(), handler::onUpdated);
+        for (GetDeletedResult.DeletedRecord record : deleted.getDeletedRecords()) {
+            handler.onDeleted(record.getId(), record.getDeletedDate());
+        }
+        Instant covered = earliest(end, earliest(updated.getLatestDateCovered(), deleted.getLatestDateCovered()));
+        return new SyncResult(sfdcObjectType, SyncResult.Mode.REPLICATION, start, covered, found,
+                deleted.getDeletedRecords().size());
+    }
+
+    private SyncResult systemModstampSync(String sfdcObjectType, List<String> fields, Instant start, Instant end,
+                                          ChangeHandler handler) throws IOException {
+        List<String> queryFields = new ArrayList<>(fields);
+        for (String field : Arrays.asList("IsDeleted", "SystemModstamp")) {
+            if (queryFields.stream().noneMatch(field::equalsIgnoreCase)) {
+                queryFields.add(field);
+            }
+        }
+        String queryString = "SELECT " + String.join(",", queryFields) + " FROM " + sfdcObjectType
+                + " WHERE SystemModstamp > " + SOQL_DATE_TIME.format(start)
+                + " AND SystemModstamp <= " + SOQL_DATE_TIME.format(end);
+        long updated = 0;
+        long deleted = 0;
+        try (QueryCursor cursor = sfdcClient.queryCursor(queryString, new QueryOptions().includeDeleted(true))) {
+            for (List<Map<String, String>> batch = cursor.nextBatch(); batch != null; batch = cursor.nextBatch()) {
+                for (Map<String, String> record : batch) {
+                    if (Boolean.parseBoolean(record.get("IsDeleted"))) {
+                        handler.onDeleted(record.get("Id"), parseModstamp(record.get("SystemModstamp")));
+                        deleted++;
+                    } else {
+                        handler.onUpdated(record);
+                        updated++;
+                    }
+                }
+            }
+        }
+        return new SyncResult(sfdcObjectType, SyncResult.Mode.SYSTEM_MODSTAMP, start, end, updated, deleted);
+    }
+
+    private static Instant parseModstamp(String systemModstamp) throws IOException {
+        if (systemModstamp == null || systemModstamp.isEmpty()) {
+            return null;
+        }
+        try {
+            return DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(systemModstamp, Instant::from);
+        } catch (DateTimeException e) {
+            throw new IOException("Salesforce returned an unparsable SystemModstamp " + systemModstamp, e);
+        }
+    }
+
+    private static Instant earliest(Instant first, Instant second) {
+        if (first == null) {
+            return second;
+        }
+        return second == null || first.isBefore(second) ? first : second;
+    }
+}
@@ -0,0 +1,266 @@
+package com.dt209.sfdcclient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads all rows of a query over several query cursors at the same time, so that a full extract of a large sObject
+ * type is bound by the number of calls Salesforce serves in parallel rather than by one queryMore chain.
+ * <ul>
+ *     <li>Two probe queries find the lowest and highest value of the partition field (CreatedDate by default)</li>
+ *     <li>That span is split into ranges of equal length, each read by its own query and queryMore chain</li>
+ *     <li>{@link QueryOptions#getParallelism()} readers take ranges until none are left, and hand their batches to
+ *     the caller through a small queue, so a slow caller holds back the readers instead of filling the heap</li>
+ * </ul>
+ * Rows come in no particular order. Rows created after the probe are not returned. Not thread safe, one reader.
+ * Readers that wait longer than {@link QueryOptions#getMaxIdleMillis()} for the caller to take rows give up, the
+ * caller then gets an error instead of the remaining rows.
+ */
+public class PartitionedQuery implements Iterator<Map<String, String>>, Closeable {
+    private static final DateTimeFormatter SOQL_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'")
+            .withZone(ZoneOffset.UTC);
+    private static final long OFFER_WAIT_MILLIS = 100;
+
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private final SfdcClient sfdcClient;
+    private final QueryOptions options;
+    private final List<String> partitions = new ArrayList<>();
+    private final Queue<String> unread = new ConcurrentLinkedQueue<>();
+    private final BlockingQueue<Batch> batches;
+    private final int readers;
+    private volatile boolean closed;
+    /**
+     * Set by a reader that gave up waiting for the caller
+     */
+    private volatile boolean abandoned;
+
+    private int readersDone;
+    private List<Map<String, String>> batch = Collections.emptyList();
+    private int position;
+
+    PartitionedQuery(SfdcClient sfdcClient, String sfdcObjectType, Collection<String> fields, String condition,
+                     QueryOptions options) throws IOException {
+        this.sfdcClient = sfdcClient;
+        this.options = options;
+        String field = options.getPartitionField();
+        String fromWhere = " FROM " + sfdcObjectType + " WHERE "
+                + (condition == null || condition.trim().isEmpty() ? "" : "(" + condition + ") AND ");
+        String select = "SELECT " + String.join(",", fields) + fromWhere;
+        Instant first = probe("SELECT " + field + fromWhere + field + " != null ORDER BY " + field + " ASC LIMIT 1", field);
+        Instant last = probe("SELECT " + field + fromWhere + field + " != null ORDER BY " + field + " DESC LIMIT 1", field);
+        if (first != null && last != null) {
+            // dateTime literals in SOQL have whole seconds, the last range ends just past the highest value
+            long start = first.getEpochSecond();
+            long span = last.getEpochSecond() + 1 - start;
+            int count = options.getPartitions() > 0 ? options.getPartitions() : 4 * options.getParallelism();
+            count = (int) Math.min(count, span);
+            for (int i = 0; i < count; i++) {
+                Instant from = Instant.ofEpochSecond(start + span * i / count);
+                Instant to = Instant.ofEpochSecond(start + span * (i + 1) / count);
+                partitions.add(select + field + " >= " + SOQL_DATE_TIME.format(from) + " AND " + field + " < "
+                        + SOQL_DATE_TIME.format(to));
+            }
+        }
+        unread.addAll(partitions);
+        readers = Math.min(options.getParallelism(), partitions.size());
+        batches = new ArrayBlockingQueue<>(Math.max(1, 2 * readers));
+        logger.fine(() -> "Reading " + sfdcObjectType + " in " + partitions.size() + " ranges of " + field
+                + " between " + first + " and " + last + " with " + readers + " readers");
+        for (int i = 0; i < readers; i++) {
+            sfdcClient.executor().execute(this::read);
+        }
+    }
+
+    /**
+     * @return the query of every range, for logging
+     */
+    public List<String> getPartitions() {
+        return Collections.unmodifiableList(partitions);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (position >= batch.size()) {
+                if (!fetchNext()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Map<String, String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(position++);
+    }
+
+    /**
+     * @return all remaining rows as a sequential, unordered stream, closing the stream closes this query.
+     * IOExceptions are rethrown as {@link UncheckedIOException}
+     */
+    public Stream<Map<String, String>> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Stops the readers once their current call returns, rows already read are dropped
+     */
+    @Override
+    public void close() {
+        closed = true;
+        batches.clear();
+        batch = Collections.emptyList();
+        position = 0;
+    }
+
+    private Instant probe(String queryString, String field) throws IOException {
+        List<Map<String, String>> rows = new ArrayList<>(1);
+        sfdcClient.queryBatch(queryString, options, rows::add);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        String value = rows.get(0).entrySet().stream().filter(entry -> entry.getKey().equalsIgnoreCase(field))
+                .map(Map.Entry::getValue).findFirst().orElse(null);
+        if (value == null) {
+            throw new IOException("Can not partition on " + field + ", it was not returned by " + queryString);
+        }
+        try {
+            return DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(value, Instant::from).truncatedTo(ChronoUnit.SECONDS);
+        } catch (DateTimeException e) {
+            throw new IOException("Can not partition on " + field + ", its value " + value + " is not a dateTime", e);
+        }
+    }
+
+    private boolean fetchNext() throws IOException {
+        while (!closed && readersDone < readers) {
+            Batch next;
+            try {
+                next = batches.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for query results");
+            }
+            if (next.error != null) {
+                close();
+                if (next.error instanceof IOException) {
+                    throw (IOException) next.error;
+                }
+                throw new IOException("Could not read a range of the query " + next.error.getMessage(), next.error);
+            }
+            if (next.records == null) {
+                readersDone++;
+            } else if (!next.records.isEmpty()) {
+                batch = next.records;
+                position = 0;
+                return true;
+            }
+        }
+        if (abandoned) {
+            throw new IOException("The readers of the query gave up after waiting " + options.getMaxIdleMillis()
+                    + "ms for rows to be taken");
+        }
+        return false;
+    }
+
+    /**
+     * Runs on the client's executor, takes ranges until none are left or the query was closed
+     */
+    private void read() {
+        Batch last = new Batch(null, null);
+        try {
+            for (String queryString = unread.poll(); queryString != null && !closed; queryString = unread.poll()) {
+                List<Map<String, String>> records = new ArrayList<>();
+                QueryBatch info = sfdcClient.queryBatch(queryString, options, records::add);
+                publish(new Batch(records, null));
+                while (!info.done && !closed) {
+                    List<Map<String, String>> more = new ArrayList<>();
+                    info = sfdcClient.queryMoreBatch(info.queryLocator, options, more::add);
+                    publish(new Batch(more, null));
+                }
+            }
+        } catch (Throwable e) {
+            // Other readers stop at their next batch once the caller sees this and closes the query
+            unread.clear();
+            last = new Batch(null, e);
+        }
+        // fetchNext waits for the marker of every reader, so it is queued even if this thread is interrupted
+        boolean interrupted = false;
+        for (boolean published = false; !published; ) {
+            try {
+                publish(last);
+                published = true;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for room in the queue, gives up once the query was closed or the caller took nothing for the max idle
+     * time. Giving up also stops the other readers and drops the rows they read.
+     * @throws InterruptedException without publishing, the reader reports it to the caller instead of its rows
+     */
+    private void publish(Batch next) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.getMaxIdleMillis());
+        while (!closed) {
+            if (batches.offer(next, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                logger.warning(() -> "No rows taken from a partitioned query for " + options.getMaxIdleMillis()
+                        + "ms, stopping its readers. Close queries that are not read to the end.");
+                abandoned = true;
+                closed = true;
+                batches.clear();
+            }
+        }
+    }
+
+    private static class Batch {
+        /**
+         * null when the reader is done
+         */
+        private final List<Map<String, String>> records;
+        private final Throwable error;
+
+        private Batch(List<Map<String, String>> records, Throwable error) {
+            this.records = records;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.dt209.sfdcclient;
+
+/**
+ * Paging information read from a query/queryMore response
+ */
+class QueryBatch {
+    /**
+     * true if this was the last batch of the query
+     */
+    boolean done = true;
+    /**
+     * Passed to queryMore to get the next batch, null when done
+     */
+    String queryLocator;
+    /**
+     * Total number of rows matched by the query, not just the ones in this batch
+     */
+    int size;
+}
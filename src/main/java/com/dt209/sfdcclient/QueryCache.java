@@ -0,0 +1,354 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional cache of query results, see {@link SfdcClient#setQueryCache(QueryCache)}. Meant for reference data
+ * (record types, owners, lookup objects) that is queried over and over with the same SOQL.
+ * <ul>
+ *     <li>Keyed by the SOQL with whitespace outside of string literals collapsed</li>
+ *     <li>Entries expire after a TTL that can be set per sObject type</li>
+ *     <li>Bounded by the total number of cached rows, least recently used entries are evicted first</li>
+ *     <li>Concurrent misses for the same query share a single call to Salesforce</li>
+ *     <li>Writes through the same client drop all entries of the written sObject type</li>
+ * </ul>
+ * Cached rows are shared between callers and can not be modified.
+ */
+public class QueryCache {
+    private final long maxRows;
+    private final long defaultTtlMillis;
+    private final Map<String, Long> ttlMillisByType = new ConcurrentHashMap<>();
+
+    /**
+     * Guarded by itself, in access order for LRU eviction
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Guarded by entries
+     */
+    private long cachedRows;
+    private final Map<String, CompletableFuture<List<Map<String, String>>>> loading = new ConcurrentHashMap<>();
+    /**
+     * Bumped on every invalidation of a type, loads that started before it are not stored. Guarded by entries.
+     */
+    private final Map<String, Long> generations = new HashMap<>();
+    private long globalGeneration;
+    /**
+     * First three characters of an ID (identifies the sObject type) to the type, learned from cached rows.
+     * Guarded by entries.
+     */
+    private final Map<String, String> typesByKeyPrefix = new HashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxRows total number of rows held over all cached queries
+     * @param defaultTtlMillis how long results stay cached unless set otherwise for their sObject type
+     */
+    public QueryCache(long maxRows, long defaultTtlMillis) {
+        this.maxRows = maxRows;
+        this.defaultTtlMillis = defaultTtlMillis;
+    }
+
+    /**
+     * @param sfdcObjectType Salesforce Object Type (such as RecordType or User), not case sensitive
+     * @param ttlMillis how long results of queries on that type stay cached, 0 to not cache them at all
+     */
+    public QueryCache setTtl(String sfdcObjectType, long ttlMillis) {
+        ttlMillisByType.put(sfdcObjectType.toLowerCase(Locale.ROOT), ttlMillis);
+        return this;
+    }
+
+    /**
+     * @return cached rows of the query, loading them if not cached or expired
+     */
+    public List<Map<String, String>> get(String queryString, Loader loader) throws IOException {
+        String key = normalize(queryString);
+        String type = objectTypeOf(key);
+        long ttlMillis = ttlMillisFor(type);
+        if (ttlMillis <= 0) {
+            misses.increment();
+            return loader.load();
+        }
+
+        long generation;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (System.currentTimeMillis() < entry.expiresAtMillis) {
+                    hits.increment();
+                    return entry.rows;
+                }
+                remove(key, entry);
+            }
+            generation = generationOf(type);
+        }
+        misses.increment();
+
+        CompletableFuture<List<Map<String, String>>> future = new CompletableFuture<>();
+        CompletableFuture<List<Map<String, String>>> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+        try {
+            List<Map<String, String>> rows = freeze(loader.load());
+            store(key, type, rows, ttlMillis, generation);
+            future.complete(rows);
+            return rows;
+        } catch (IOException | RuntimeException e) {
+            loadFailures.increment();
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * Drops all cached queries on the sObject type, called by the client after writing to it
+     * @param sfdcObjectType not case sensitive
+     */
+    public void invalidate(String sfdcObjectType) {
+        String type = sfdcObjectType.toLowerCase(Locale.ROOT);
+        invalidations.increment();
+        synchronized (entries) {
+            generations.merge(type, 1L, Long::sum);
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next().getValue();
+                if (type.equals(entry.type)) {
+                    cachedRows -= entry.rows.size();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all cached queries on the sObject type the record belongs to, everything if the type is not known
+     */
+    public void invalidateById(String id) {
+        String type = null;
+        if (id != null && id.length() >= 3) {
+            synchronized (entries) {
+                type = typesByKeyPrefix.get(id.substring(0, 3));
+            }
+        }
+        if (type == null) {
+            invalidateAll();
+        } else {
+            invalidate(type);
+        }
+    }
+
+    public void invalidateAll() {
+        invalidations.increment();
+        synchronized (entries) {
+            globalGeneration++;
+            entries.clear();
+            cachedRows = 0;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return share of lookups answered from the cache, 0 if there were none
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return number of rows currently cached over all queries
+     */
+    public long getCachedRows() {
+        synchronized (entries) {
+            return cachedRows;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCache{hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+                + ", invalidations=" + getInvalidationCount() + ", cachedRows=" + getCachedRows() + "}";
+    }
+
+    private void store(String key, String type, List<Map<String, String>> rows, long ttlMillis, long generation) {
+        if (rows.size() > maxRows) {
+            return;
+        }
+        synchronized (entries) {
+            if (generation != generationOf(type)) {
+                // Written to while loading, the rows may already be stale
+                return;
+            }
+            Entry previous = entries.put(key, new Entry(type, rows, System.currentTimeMillis() + ttlMillis));
+            if (previous != null) {
+                cachedRows -= previous.rows.size();
+            }
+            cachedRows += rows.size();
+            for (Map<String, String> row : rows) {
+                String id = row.get("Id");
+                if (id != null && id.length() >= 3) {
+                    typesByKeyPrefix.put(id.substring(0, 3), type);
+                }
+            }
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (cachedRows > maxRows && eldest.hasNext()) {
+                Entry evicted = eldest.next().getValue();
+                cachedRows -= evicted.rows.size();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Must hold the lock on entries
+     */
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        cachedRows -= entry.rows.size();
+    }
+
+    /**
+     * Must hold the lock on entries
+     */
+    private long generationOf(String type) {
+        return globalGeneration + generations.getOrDefault(type, 0L);
+    }
+
+    private long ttlMillisFor(String type) {
+        return type == null ? defaultTtlMillis : ttlMillisByType.getOrDefault(type, defaultTtlMillis);
+    }
+
+    private static List<Map<String, String>> freeze(List<Map<String, String>> rows) {
+        List<Map<String, String>> frozen = new ArrayList<>(rows.size());
+        for (Map<String, String> row : rows) {
+            frozen.add(Collections.unmodifiableMap(row));
+        }
+        return Collections.unmodifiableList(frozen);
+    }
+
+    private static List<Map<String, String>> await(CompletableFuture<List<Map<String, String>>> future)
+            throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Could not load query " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * @return the query with whitespace outside of quoted literals collapsed to single spaces
+     */
+    static String normalize(String queryString) {
+        StringBuilder normalized = new StringBuilder(queryString.length());
+        boolean quoted = false;
+        boolean pendingSpace = false;
+        for (int i = 0; i < queryString.length(); i++) {
+            char c = queryString.charAt(i);
+            if (!quoted && Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            normalized.append(c);
+            if (c == '\\' && quoted && i + 1 < queryString.length()) {
+                normalized.append(queryString.charAt(++i));
+            } else if (c == '\'') {
+                quoted = !quoted;
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @return lower case sObject type of the outer FROM clause of a normalized query, null if not found
+     */
+    static String objectTypeOf(String normalizedQuery) {
+        String lower = normalizedQuery.toLowerCase(Locale.ROOT);
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                depth++;
+            } else if (!quoted && c == ')') {
+                depth--;
+            } else if (!quoted && depth == 0 && lower.startsWith(" from ", i)) {
+                int start = i + " from ".length();
+                int end = start;
+                while (end < lower.length() && (Character.isLetterOrDigit(lower.charAt(end)) || lower.charAt(end) == '_')) {
+                    end++;
+                }
+                return end > start ? lower.substring(start, end) : null;
+            }
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        List<Map<String, String>> load() throws IOException;
+    }
+
+    private static class Entry {
+        private final String type;
+        private final List<Map<String, String>> rows;
+        private final long expiresAtMillis;
+
+        private Entry(String type, List<Map<String, String>> rows, long expiresAtMillis) {
+            this.type = type;
+            this.rows = rows;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
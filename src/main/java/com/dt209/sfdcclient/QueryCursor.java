@@ -0,0 +1,172 @@
+package com.dt209.sfdcclient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over all rows of a query, following queryMore until Salesforce reports the query as done.
+ * While the caller works on one batch the next one is fetched in the background (unless turned off through
+ * {@link QueryOptions#prefetch(boolean)}), so at most two batches are held in memory at a time.
+ * Not thread safe, use one cursor per thread.
+ */
+public class QueryCursor implements Iterator<Map<String, String>>, Closeable {
+    private final SfdcClient sfdcClient;
+    private final QueryOptions options;
+    private final int totalSize;
+
+    private List<Map<String, String>> batch;
+    private int position;
+    private String queryLocator;
+    private CompletableFuture<Batch> nextBatch;
+    /**
+     * The queryMore call behind nextBatch, cancelled on close so the HTTP call does not keep running
+     */
+    private CompletableFuture<QueryBatch> nextCall;
+    private boolean closed;
+
+    QueryCursor(SfdcClient sfdcClient, String queryString, QueryOptions options) throws IOException {
+        this.sfdcClient = sfdcClient;
+        this.options = options;
+        List<Map<String, String>> records = new ArrayList<>();
+        QueryBatch first = sfdcClient.queryBatch(queryString, options, records::add);
+        totalSize = first.size;
+        accept(new Batch(records, first));
+    }
+
+    /**
+     * @return total number of rows matched by the query as reported by Salesforce
+     */
+    public int getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Batch at a time access, not to be mixed with {@link #next()}
+     * @return the remaining rows of the current batch, or the next batch, null once all rows were returned
+     */
+    public List<Map<String, String>> nextBatch() throws IOException {
+        if (position < batch.size()) {
+            List<Map<String, String>> rest = position == 0 ? batch : batch.subList(position, batch.size());
+            position = batch.size();
+            return rest;
+        }
+        if (!fetchNext()) {
+            return null;
+        }
+        position = batch.size();
+        return batch;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            // Batches can come back empty (queryAll over purged rows), keep going until there is a row or we are done
+            while (position >= batch.size()) {
+                if (!fetchNext()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Map<String, String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(position++);
+    }
+
+    /**
+     * @return all remaining rows as a sequential stream, closing the stream closes this cursor.
+     * IOExceptions are rethrown as {@link UncheckedIOException}
+     */
+    public Stream<Map<String, String>> stream() {
+        return StreamSupport.stream(Spliterators.spliterator(this, totalSize, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Stops prefetching, rows already fetched are dropped
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (nextBatch != null) {
+            nextCall.cancel(false);
+            nextBatch.cancel(false);
+            nextBatch = null;
+            nextCall = null;
+        }
+        queryLocator = null;
+        batch = new ArrayList<>();
+        position = 0;
+    }
+
+    private boolean fetchNext() throws IOException {
+        if (closed || queryLocator == null) {
+            return false;
+        }
+        Batch next;
+        if (nextBatch != null) {
+            try {
+                next = nextBatch.join();
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = e.getCause() == null ? e : e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Could not fetch the next batch of query results " + cause.getMessage(), cause);
+            }
+        } else {
+            next = fetch(queryLocator);
+        }
+        accept(next);
+        return true;
+    }
+
+    private void accept(Batch next) {
+        batch = next.records;
+        position = 0;
+        queryLocator = next.info.done ? null : next.info.queryLocator;
+        nextBatch = null;
+        nextCall = null;
+        if (queryLocator != null && options.isPrefetch()) {
+            List<Map<String, String>> records = new ArrayList<>();
+            nextCall = sfdcClient.queryMoreBatchAsync(queryLocator, options, records::add);
+            nextBatch = nextCall.thenApply(info -> new Batch(records, info));
+        }
+    }
+
+    private Batch fetch(String locator) throws IOException {
+        List<Map<String, String>> records = new ArrayList<>();
+        QueryBatch info = sfdcClient.queryMoreBatch(locator, options, records::add);
+        return new Batch(records, info);
+    }
+
+    private static class Batch {
+        private final List<Map<String, String>> records;
+        private final QueryBatch info;
+
+        private Batch(List<Map<String, String>> records, QueryBatch info) {
+            this.records = records;
+            this.info = info;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.dt209.sfdcclient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options for paginated queries, see {@link SfdcClient#queryCursor(String, QueryOptions)}
+ */
+public class QueryOptions {
+    public static final int MIN_BATCH_SIZE = 200;
+    public static final int MAX_BATCH_SIZE = 2000;
+
+    private Integer batchSize;
+    private boolean includeDeleted;
+    private boolean prefetch = true;
+    private int parallelism = 4;
+    private int partitions;
+    private String partitionField = "CreatedDate";
+    private long maxIdleMillis = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * @param batchSize Requested number of records per batch (sent in the QueryOptions header), between 200 and 2000.
+     *                  Salesforce may return smaller batches, for example when the query selects many or large fields.
+     */
+    public QueryOptions batchSize(int batchSize) {
+        if (batchSize < MIN_BATCH_SIZE || batchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch size must be between " + MIN_BATCH_SIZE + " and "
+                    + MAX_BATCH_SIZE + ", was " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param includeDeleted true to use queryAll, which also returns deleted and archived records
+     */
+    public QueryOptions includeDeleted(boolean includeDeleted) {
+        this.includeDeleted = includeDeleted;
+        return this;
+    }
+
+    /**
+     * @param prefetch false to only fetch the next batch when the current one has been consumed
+     */
+    public QueryOptions prefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+        return this;
+    }
+
+    /**
+     * Only used by {@link SfdcClient#queryPartitioned}
+     * @param parallelism most partitions read at the same time, each keeps one query cursor open. Salesforce
+     *                    allows 10 open cursors per user, and fewer concurrent long running calls than that.
+     */
+    public QueryOptions parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Only used by {@link SfdcClient#queryPartitioned}
+     * @param partitions number of ranges the query is split into, 0 (the default) for four per parallel reader, so
+     *                   that readers of small ranges pick up the remaining ones when the rows are unevenly spread
+     */
+    public QueryOptions partitions(int partitions) {
+        if (partitions < 0) {
+            throw new IllegalArgumentException("Partitions must not be negative, was " + partitions);
+        }
+        this.partitions = partitions;
+        return this;
+    }
+
+    /**
+     * Only used by {@link SfdcClient#queryPartitioned}
+     * @param partitionField dateTime field to split on, must be set on every row. CreatedDate (the default) does not
+     *                       change, rows whose SystemModstamp changes while being read may be returned twice or not at all.
+     */
+    public QueryOptions partitionField(String partitionField) {
+        this.partitionField = partitionField;
+        return this;
+    }
+
+    /**
+     * Only used by {@link SfdcClient#queryPartitioned}
+     * @param maxIdleMillis longest time the readers wait for the caller to take rows before they give up and the
+     *                      query fails, so that a query that was dropped without closing it does not hold its
+     *                      threads and cursors forever
+     */
+    public QueryOptions maxIdleMillis(long maxIdleMillis) {
+        if (maxIdleMillis <= 0) {
+            throw new IllegalArgumentException("Max idle time must be positive, was " + maxIdleMillis);
+        }
+        this.maxIdleMillis = maxIdleMillis;
+        return this;
+    }
+
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public boolean isIncludeDeleted() {
+        return includeDeleted;
+    }
+
+    public boolean isPrefetch() {
+        return prefetch;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public String getPartitionField() {
+        return partitionField;
+    }
+
+    public long getMaxIdleMillis() {
+        return maxIdleMillis;
+    }
+
+    /**
+     * @return SOAP header XML for these options, empty if none are needed
+     */
+    String toHeaderXml() {
+        if (batchSize == null) {
+            return "";
+        }
+        return "    <n1:QueryOptions><n1:batchSize>" + batchSize + "</n1:batchSize></n1:QueryOptions>\n";
+    }
+}
@@ -0,0 +1,127 @@
+package com.dt209.sfdcclient;
+
+import java.math.BigDecimal;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * One row of a {@link RecordSet}, values are stored in a plain array indexed by the shared {@link RecordSchema}.
+ * Also a read-only Map of field name to value, for code written against {@link SfdcClient#query(String)}.
+ */
+public class Record extends AbstractMap<String, String> {
+    private final RecordSchema schema;
+    private final String[] values;
+
+    Record(RecordSchema schema, String[] values) {
+        this.schema = schema;
+        this.values = values;
+    }
+
+    public RecordSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return value of the column, null if this record does not have it
+     */
+    public String get(int index) {
+        return index < values.length ? values[index] : null;
+    }
+
+    @Override
+    public String get(Object name) {
+        if (!(name instanceof String)) {
+            return null;
+        }
+        int index = schema.indexOf((String) name);
+        return index < 0 ? null : get(index);
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return get(name) != null;
+    }
+
+    /**
+     * @return the value, null if missing or empty (Salesforce sends null fields as empty elements)
+     */
+    public String getString(String name) {
+        String value = get(name);
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    public Integer getInteger(String name) {
+        String value = getString(name);
+        return value == null ? null : Integer.valueOf(value);
+    }
+
+    public Long getLong(String name) {
+        String value = getString(name);
+        return value == null ? null : Long.valueOf(value);
+    }
+
+    public Double getDouble(String name) {
+        String value = getString(name);
+        return value == null ? null : Double.valueOf(value);
+    }
+
+    public BigDecimal getDecimal(String name) {
+        String value = getString(name);
+        return value == null ? null : new BigDecimal(value);
+    }
+
+    public Boolean getBoolean(String name) {
+        String value = getString(name);
+        return value == null ? null : Boolean.valueOf(value);
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+                    private int next = advance(0);
+
+                    private int advance(int from) {
+                        int index = from;
+                        while (index < values.length && values[index] == null) {
+                            index++;
+                        }
+                        return index;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < values.length;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, String> entry = new SimpleImmutableEntry<>(schema.name(next), values[next]);
+                        next = advance(next + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (String value : values) {
+                    if (value != null) {
+                        size++;
+                    }
+                }
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Receives query records one at a time, as soon as each one has been read from the response stream.
+ */
+@FunctionalInterface
+public interface RecordHandler {
+    /**
+     * @param record field name (without namespace prefix) to field value, the map is not retained by the client
+     * @throws IOException to abort reading the rest of the response
+     */
+    void onRecord(Map<String, String> record) throws IOException;
+}
@@ -0,0 +1,210 @@
+package com.dt209.sfdcclient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects lookups of single records by ID and reads them with batched {@link SfdcClient#retrieve} calls, so that
+ * many concurrent callers asking for a few records each cost a handful of calls instead of one query per ID.
+ * Lookups of the same sObject type and fields that are made within maxDelayMillis of each other share a batch,
+ * and an ID asked for more than once in a batch is only read once. A batch is sent once it holds maxBatchSize IDs,
+ * or maxDelayMillis after its first lookup, whichever comes first. Batches are sent in parallel.
+ */
+public class RecordLoader implements Closeable {
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private final SfdcClient sfdcClient;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Guarded by this, keyed by sObject type and field list
+     */
+    private final Map<String, Batch> pending = new LinkedHashMap<>();
+    private boolean closed;
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder retrievedIds = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * @param sfdcClient reads the records
+     * @param maxBatchSize distinct IDs per retrieve call, at most {@link SfdcClient#MAX_RETRIEVE_IDS}
+     * @param maxDelayMillis longest time a lookup waits for others to join its batch
+     */
+    public RecordLoader(SfdcClient sfdcClient, int maxBatchSize, long maxDelayMillis) {
+        this.sfdcClient = sfdcClient;
+        this.maxBatchSize = Math.max(1, Math.min(SfdcClient.MAX_RETRIEVE_IDS, maxBatchSize));
+        this.maxDelayMillis = maxDelayMillis;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "sfdcclient-record-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.scheduler = executor;
+    }
+
+    /**
+     * Queues a lookup
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param id 15 or 18 character ID
+     * @param fields Salesforce Object fields to return, Id is always included
+     * @return completes with the record, or null if there is no record with the ID (deleted or of another type).
+     * The record is shared with other callers of the same ID and can not be modified.
+     */
+    public CompletableFuture<Map<String, String>> load(String sfdcObjectType, String id, Collection<String> fields) {
+        CompletableFuture<Map<String, String>> result = new CompletableFuture<>();
+        String fullId = SalesforceIds.toFullId(id);
+        if (fullId == null) {
+            // Would fail the whole batch with MALFORMED_ID
+            result.completeExceptionally(new IOException("Malformed Salesforce ID \"" + id + "\""));
+            return result;
+        }
+        loads.increment();
+        TreeSet<String> fieldSet = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        fieldSet.add("Id");
+        fieldSet.addAll(fields);
+        String key = sfdcObjectType.toLowerCase(Locale.ROOT) + ":" + String.join(",", fieldSet).toLowerCase(Locale.ROOT);
+        Batch full;
+        synchronized (this) {
+            if (closed) {
+                result.completeExceptionally(new IOException("Record loader is closed"));
+                return result;
+            }
+            Batch batch = pending.get(key);
+            if (batch == null) {
+                batch = new Batch(key, sfdcObjectType, new ArrayList<>(fieldSet));
+                pending.put(key, batch);
+                Batch scheduled = batch;
+                batch.scheduledSend = scheduler.schedule(() -> send(scheduled), maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+            batch.results.computeIfAbsent(fullId, ignored -> new ArrayList<>(1)).add(result);
+            if (batch.results.size() < maxBatchSize) {
+                return result;
+            }
+            // Later lookups start a new batch instead of joining this one while it waits for the executor
+            pending.remove(key);
+            batch.scheduledSend.cancel(false);
+            full = batch;
+        }
+        sfdcClient.executor().execute(() -> retrieve(full));
+        return result;
+    }
+
+    /**
+     * Sends all queued lookups without waiting for more to join them
+     */
+    public void flush() {
+        List<Batch> queued;
+        synchronized (this) {
+            queued = new ArrayList<>(pending.values());
+        }
+        for (Batch batch : queued) {
+            batch.scheduledSend.cancel(false);
+            send(batch);
+        }
+    }
+
+    /**
+     * @return number of lookups queued since this loader was created
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * @return number of distinct IDs read, lower than {@link #getLoadCount()} when callers asked for the same IDs
+     */
+    public long getRetrievedIdCount() {
+        return retrievedIds.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * Stops taking lookups, sends everything queued and releases the scheduler thread. Does not close the client.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flush();
+        scheduler.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "RecordLoader{loads=" + getLoadCount() + ", retrievedIds=" + getRetrievedIdCount() + ", batches="
+                + getBatchCount() + "}";
+    }
+
+    /**
+     * Takes the batch out of the queue, unless another thread already did, and reads it on the client's executor
+     */
+    private void send(Batch batch) {
+        synchronized (this) {
+            if (pending.get(batch.key) != batch) {
+                return;
+            }
+            pending.remove(batch.key);
+        }
+        sfdcClient.executor().execute(() -> retrieve(batch));
+    }
+
+    private void retrieve(Batch batch) {
+        List<String> ids = new ArrayList<>(batch.results.keySet());
+        batches.increment();
+        retrievedIds.add(ids.size());
+        try {
+            Map<String, Map<String, String>> records = new HashMap<>();
+            sfdcClient.retrieve(batch.fields, batch.sfdcObjectType, ids,
+                    record -> records.put(SalesforceIds.toFullId(record.get("Id")), Collections.unmodifiableMap(record)));
+            batch.results.forEach((id, results) -> results.forEach(result -> result.complete(records.get(id))));
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Could not retrieve " + ids.size() + " batched " + batch.sfdcObjectType + " records", e);
+            batch.results.values().forEach(results -> results.forEach(result -> result.completeExceptionally(e)));
+        }
+    }
+
+    private static class Batch {
+        private final String key;
+        private final String sfdcObjectType;
+        private final List<String> fields;
+        /**
+         * Guarded by the loader until the batch is taken out of the queue, 18 character ID to its callers
+         */
+        private final Map<String, List<CompletableFuture<Map<String, String>>>> results = new LinkedHashMap<>();
+        private ScheduledFuture<?> scheduledSend;
+
+        private Batch(String key, String sfdcObjectType, List<String> fields) {
+            this.key = key;
+            this.sfdcObjectType = sfdcObjectType;
+            this.fields = fields;
+        }
+    }
+}
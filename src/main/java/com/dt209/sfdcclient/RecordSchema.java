@@ -0,0 +1,80 @@
+package com.dt209.sfdcclient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Field names of a query result and the column each one is stored in. Shared by all rows of a {@link RecordSet},
+ * so every field name is held once instead of once per row.
+ */
+public class RecordSchema {
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private long expectedHits;
+
+    /**
+     * @return column of the field, -1 if no row has it
+     */
+    public int indexOf(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return field name of the column
+     */
+    public String name(int index) {
+        return names.get(index);
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * @return field names in column order
+     */
+    public List<String> names() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @return number of {@link #columnOf(String, int)} calls answered by the expected column, without a lookup
+     */
+    long getExpectedHits() {
+        return expectedHits;
+    }
+
+    /**
+     * Column of the field at the given position in a record, adding it if it was not seen before. Records of one
+     * query list their fields in the same order, so the expected column is almost always the right one and no
+     * lookup is needed.
+     * @param expected column after the one returned for the previous field of the record, 0 for the first field.
+     * Not the raw position of the field, a field listed twice (the Id of a partner API query) keeps one column.
+     */
+    int columnOf(String name, int expected) {
+        if (expected < names.size() && names.get(expected).equals(name)) {
+            expectedHits++;
+            return expected;
+        }
+        Integer index = indexes.get(name);
+        if (index != null) {
+            return index;
+        }
+        String interned = name.intern();
+        names.add(interned);
+        indexes.put(interned, names.size() - 1);
+        return names.size() - 1;
+    }
+
+    @Override
+    public String toString() {
+        return names.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.dt209.sfdcclient;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact query result: field names are parsed once into a shared {@link RecordSchema} and each row is a String
+ * array indexed by it, instead of a HashMap per row that repeats every field name. Values repeated from one row
+ * to the next in the same column (record type, owner, picklist values and so on) share one String.
+ */
+public class RecordSet extends AbstractList<Record> {
+    private final RecordSchema schema = new RecordSchema();
+    private final List<String[]> rows = new ArrayList<>();
+
+    public RecordSchema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public Record get(int index) {
+        return new Record(schema, rows.get(index));
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * @return sink that appends the records of a query response to this set
+     */
+    SoapResponseParser.RecordSink sink() {
+        return new Sink();
+    }
+
+    private class Sink implements SoapResponseParser.RecordSink {
+        private String[] row;
+        /**
+         * Column expected for the next field, the one after the column of the previous field
+         */
+        private int position;
+        /**
+         * Last row added, used to share repeated values
+         */
+        private String[] previous;
+
+        @Override
+        public void startRecord() {
+            row = new String[Math.max(schema.size(), 1)];
+            position = 0;
+        }
+
+        @Override
+        public void field(String name, String value) {
+            int index = schema.columnOf(name, position);
+            position = index + 1;
+            if (index >= row.length) {
+                String[] grown = new String[schema.size()];
+                System.arraycopy(row, 0, grown, 0, row.length);
+                row = grown;
+            }
+            if (previous != null && index < previous.length && value.equals(previous[index])) {
+                value = previous[index];
+            }
+            row[index] = value;
+        }
+
+        @Override
+        public void endRecord() {
+            rows.add(row);
+            previous = row;
+            row = null;
+        }
+    }
+}
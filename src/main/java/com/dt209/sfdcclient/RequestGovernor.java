@@ -0,0 +1,349 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Paces the calls of one or more {@link SfdcClient}s, see {@link SfdcClient#setRequestGovernor(RequestGovernor)}.
+ * Share one governor between all clients that talk to the same org.
+ * <ul>
+ *     <li>A token bucket caps the number of calls started per second</li>
+ *     <li>The number of calls in flight is capped by a limit that grows by about one per round of successful
+ *     calls and is halved when Salesforce reports an overload (SERVER_UNAVAILABLE, concurrent request limit)</li>
+ *     <li>Calls that failed with a retryable fault are sent again after an exponential backoff with full jitter</li>
+ * </ul>
+ * Calls waiting for room queue up in the order they asked. Asynchronous calls wait without holding a thread, the
+ * thread that releases a permit hands it to the next waiter.
+ */
+public class RequestGovernor {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 25;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 500;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 30_000;
+
+    /**
+     * Runs token waits and retry backoffs of asynchronous calls, one daemon thread started on first use
+     */
+    private static final ScheduledExecutorService TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "sfdcclient-governor-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final double permitsPerSecond;
+    private final double burst;
+    private final int minInFlight;
+    private final int maxInFlight;
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Guarded by lock, calls waiting for room below the in-flight limit, the first one is admitted next
+     */
+    private final Deque<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+    /**
+     * Guarded by lock
+     */
+    private double tokens;
+    private long refilledAtNanos = System.nanoTime();
+    private double inFlightLimit;
+    private int inFlight;
+    /**
+     * Bumped on every decrease of the limit, so that the calls that were already in flight when the org reported
+     * an overload only halve the limit once between them
+     */
+    private long epoch;
+
+    /**
+     * Governor with all the defaults above and no limit on calls per second
+     */
+    public RequestGovernor() {
+        this(new Builder());
+    }
+
+    private RequestGovernor(Builder builder) {
+        this.permitsPerSecond = builder.permitsPerSecond;
+        this.burst = Math.max(1, builder.burst);
+        this.minInFlight = Math.max(1, builder.minInFlight);
+        this.maxInFlight = Math.max(this.minInFlight, builder.maxInFlight);
+        this.maxRetries = builder.maxRetries;
+        this.baseDelayMillis = builder.baseDelayMillis;
+        this.maxDelayMillis = builder.maxDelayMillis;
+        this.tokens = this.burst;
+        this.inFlightLimit = this.maxInFlight;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Waits for a token and for room below the in-flight limit
+     * @return to be released once the call is done
+     */
+    Permit acquire() throws IOException {
+        CompletableFuture<Permit> permit = acquireAsync();
+        try {
+            return permit.get();
+        } catch (InterruptedException e) {
+            if (!permit.cancel(false)) {
+                permit.join().abandon();
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to call Salesforce", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not wait to call Salesforce", e.getCause());
+        }
+    }
+
+    /**
+     * Takes a token and a place in the queue for room below the in-flight limit, without blocking
+     * @return completes with the permit, on the thread that made room for it. Cancel it to leave the queue.
+     */
+    CompletableFuture<Permit> acquireAsync() {
+        CompletableFuture<Permit> permit = new CompletableFuture<>();
+        long waitNanos = reserveToken();
+        if (waitNanos > 0) {
+            TIMER.schedule(() -> enqueue(permit), waitNanos, TimeUnit.NANOSECONDS);
+        } else {
+            enqueue(permit);
+        }
+        return permit;
+    }
+
+    /**
+     * Runs the task after the backoff of {@link #backoffMillis(int)}, without holding a thread while waiting
+     * @param attempt 0 for the first retry
+     */
+    void afterBackoff(int attempt, Runnable task) {
+        TIMER.schedule(task, backoffMillis(attempt), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param attempt 0 for the first retry
+     * @return true if a call that failed with the error should be sent again
+     */
+    boolean shouldRetry(Throwable error, int attempt) {
+        return attempt < maxRetries && error instanceof SfdcFaultException && ((SfdcFaultException) error).isRetryable();
+    }
+
+    /**
+     * @param attempt 0 for the first retry
+     * @return random delay between 0 and baseDelay * 2^attempt, capped at maxDelay
+     */
+    long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt, 30));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    void sleepBeforeRetry(int attempt) throws IOException {
+        try {
+            TimeUnit.MILLISECONDS.sleep(backoffMillis(attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry a call to Salesforce", e);
+        }
+    }
+
+    /**
+     * @return current cap on calls in flight
+     */
+    public int getInFlightLimit() {
+        lock.lock();
+        try {
+            return (int) inFlightLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestGovernor{permitsPerSecond=" + permitsPerSecond + ", inFlight=" + getInFlight()
+                + ", inFlightLimit=" + getInFlightLimit() + "}";
+    }
+
+    /**
+     * @return how long to wait for the reserved token, 0 if one was available
+     */
+    private long reserveToken() {
+        if (permitsPerSecond <= 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refilledAtNanos) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            refilledAtNanos = now;
+            // Tokens may go negative, later callers then wait behind the ones that reserved before them
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(CompletableFuture<Permit> permit) {
+        lock.lock();
+        try {
+            waiters.add(permit);
+        } finally {
+            lock.unlock();
+        }
+        admit();
+    }
+
+    /**
+     * Hands out permits to the waiters while there is room. The permits are completed outside the lock since that
+     * runs the waiters' callbacks, which usually start the call.
+     */
+    private void admit() {
+        while (true) {
+            CompletableFuture<Permit> waiter;
+            Permit permit;
+            lock.lock();
+            try {
+                if (waiters.isEmpty() || inFlight >= (int) inFlightLimit) {
+                    return;
+                }
+                waiter = waiters.poll();
+                if (waiter.isDone()) {
+                    // Cancelled while waiting
+                    continue;
+                }
+                inFlight++;
+                permit = new Permit(epoch);
+            } finally {
+                lock.unlock();
+            }
+            if (!waiter.complete(permit)) {
+                permit.abandon();
+            }
+        }
+    }
+
+    /**
+     * @param adjust false for a permit given back without making a call, which says nothing about the org's load
+     */
+    private void release(long permitEpoch, Throwable error, boolean adjust) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (adjust && error instanceof SfdcFaultException && ((SfdcFaultException) error).isOverload()) {
+                if (permitEpoch == epoch) {
+                    inFlightLimit = Math.max(minInFlight, inFlightLimit / 2);
+                    epoch++;
+                }
+            } else if (adjust && error == null) {
+                inFlightLimit = Math.min(maxInFlight, inFlightLimit + 1 / inFlightLimit);
+            }
+        } finally {
+            lock.unlock();
+        }
+        admit();
+    }
+
+    /**
+     * Room for one call, release exactly once
+     */
+    final class Permit {
+        private final long epoch;
+
+        private Permit(long epoch) {
+            this.epoch = epoch;
+        }
+
+        /**
+         * @param error null if the call succeeded
+         */
+        void release(Throwable error) {
+            RequestGovernor.this.release(epoch, error, true);
+        }
+
+        /**
+         * Gives the permit back without having made the call, such as when the call was cancelled meanwhile
+         */
+        void abandon() {
+            RequestGovernor.this.release(epoch, null, false);
+        }
+    }
+
+    public static class Builder {
+        private double permitsPerSecond;
+        private double burst = 1;
+        private int minInFlight = 1;
+        private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        private int maxRetries = DEFAULT_MAX_RETRIES;
+        private long baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+        private long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+        private Builder() {
+        }
+
+        /**
+         * @param permitsPerSecond Calls started per second, 0 for no limit
+         * @param burst Calls that may start at once after a quiet period
+         */
+        public Builder permitsPerSecond(double permitsPerSecond, int burst) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * @param minInFlight Calls in flight allowed even while Salesforce reports an overload
+         * @param maxInFlight Calls in flight allowed while everything goes well, Salesforce allows 25 long
+         *                    running (over 20 seconds) requests per production org at the same time
+         */
+        public Builder inFlight(int minInFlight, int maxInFlight) {
+            this.minInFlight = minInFlight;
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * @param maxRetries Times a call that failed with a retryable fault is sent again, 0 to not retry
+         */
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * @param baseDelayMillis Upper bound of the delay before the first retry, doubled on each retry
+         * @param maxDelayMillis Upper bound of the delay before any retry
+         */
+        public Builder backoff(long baseDelayMillis, long maxDelayMillis) {
+            this.baseDelayMillis = baseDelayMillis;
+            this.maxDelayMillis = maxDelayMillis;
+            return this;
+        }
+
+        public RequestGovernor build() {
+            return new RequestGovernor(this);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.dt209.sfdcclient;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Fields of an sObject type as returned by describeSObject, see {@link SfdcClient#describeSObject(String)}
+ */
+public class SObjectDescribe {
+    private final String name;
+    private final List<FieldDescribe> fields;
+    private final Map<String, FieldDescribe> fieldsByName = new HashMap<>();
+    private final Map<String, FieldDescribe> fieldsByLowerCaseName = new HashMap<>();
+
+    public SObjectDescribe(String name, List<FieldDescribe> fields) {
+        this.name = name;
+        this.fields = Collections.unmodifiableList(fields);
+        for (FieldDescribe field : fields) {
+            fieldsByName.put(field.getName(), field);
+            fieldsByLowerCaseName.put(field.getName().toLowerCase(Locale.ROOT), field);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<FieldDescribe> getFields() {
+        return fields;
+    }
+
+    /**
+     * @param name not case sensitive, same as in Salesforce
+     * @return null if the sObject type has no such field
+     */
+    public FieldDescribe getField(String name) {
+        // Responses use the names exactly as described, only names written by callers need the slower lookup
+        FieldDescribe field = fieldsByName.get(name);
+        return field != null ? field : fieldsByLowerCaseName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public String toString() {
+        return "SObjectDescribe{name=" + name + ", fields=" + fields.size() + "}";
+    }
+}
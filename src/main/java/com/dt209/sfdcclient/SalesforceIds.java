@@ -0,0 +1,55 @@
+package com.dt209.sfdcclient;
+
+/**
+ * Salesforce record IDs come in a case sensitive 15 character form and a case insensitive 18 character form that
+ * appends a checksum of the upper case letters. Both name the same record.
+ */
+final class SalesforceIds {
+    private static final String ID_SUFFIX_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ012345";
+
+    private SalesforceIds() {
+    }
+
+    /**
+     * @return the 18 character, case insensitive form of a 15 or 18 character ID, null if it is malformed
+     */
+    static String toFullId(String id) {
+        if (id == null || (id.length() != 15 && id.length() != 18)) {
+            return null;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                return null;
+            }
+        }
+        if (id.length() == 18) {
+            // The suffix tells which of the first 15 characters are upper case, so the result matches the ID
+            // Salesforce returns for the record whatever case it was passed in
+            char[] restored = id.substring(0, 15).toCharArray();
+            for (int chunk = 0; chunk < 3; chunk++) {
+                int flags = ID_SUFFIX_CHARACTERS.indexOf(Character.toUpperCase(id.charAt(15 + chunk)));
+                if (flags < 0) {
+                    return null;
+                }
+                for (int i = 0; i < 5; i++) {
+                    char c = restored[chunk * 5 + i];
+                    restored[chunk * 5 + i] = (flags & 1 << i) != 0 ? Character.toUpperCase(c) : Character.toLowerCase(c);
+                }
+            }
+            id = new String(restored);
+        }
+        StringBuilder fullId = new StringBuilder(18).append(id);
+        for (int chunk = 0; chunk < 3; chunk++) {
+            int flags = 0;
+            for (int i = 0; i < 5; i++) {
+                char c = id.charAt(chunk * 5 + i);
+                if (c >= 'A' && c <= 'Z') {
+                    flags |= 1 << i;
+                }
+            }
+            fullId.append(ID_SUFFIX_CHARACTERS.charAt(flags));
+        }
+        return fullId.toString();
+    }
+}
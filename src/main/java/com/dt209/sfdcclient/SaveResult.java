@@ -0,0 +1,42 @@
+package com.dt209.sfdcclient;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of creating or updating a single record, results are returned in the same order as the records sent
+ */
+public class SaveResult {
+    private final String id;
+    private final boolean success;
+    private final List<SfdcError> errors;
+
+    public SaveResult(String id, boolean success, List<SfdcError> errors) {
+        this.id = id;
+        this.success = success;
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * @return ID of the record, null if it could not be saved
+     */
+    public String getId() {
+        return id;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * @return why the record could not be saved, empty on success
+     */
+    public List<SfdcError> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{id=" + id + ", success=" + success + ", errors=" + errors + "}";
+    }
+}
@@ -0,0 +1,174 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Holds the session of one set of credentials. Only one login runs at a time, callers that need a session while a
+ * login is in flight wait for that login instead of starting their own. A session that is about to expire is
+ * renewed in the background while callers keep using it until it does.
+ */
+class SessionManager {
+    /**
+     * Sessions are renewed this long before they expire
+     */
+    static final long REFRESH_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private final Login login;
+    private final Executor executor;
+    private final Object lock = new Object();
+
+    private volatile SfdcSession session;
+    /**
+     * Guarded by lock, not null while a login is running
+     */
+    private CompletableFuture<SfdcSession> inFlight;
+
+    /**
+     * @param login does the actual login call
+     * @param executor runs background and asynchronous logins
+     */
+    SessionManager(Login login, Executor executor) {
+        this.login = login;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the current session, null if not logged in yet
+     */
+    SfdcSession current() {
+        return session;
+    }
+
+    /**
+     * @return a usable session, logging in if there is none or it has expired
+     */
+    SfdcSession get() throws IOException {
+        SfdcSession current = session;
+        if (current != null && !current.isExpired()) {
+            renewIfExpiring(current);
+            return current;
+        }
+        return refresh(current);
+    }
+
+    /**
+     * Non blocking version of {@link #get()}
+     */
+    CompletableFuture<SfdcSession> getAsync() {
+        SfdcSession current = session;
+        if (current != null && !current.isExpired()) {
+            renewIfExpiring(current);
+            return CompletableFuture.completedFuture(current);
+        }
+        return refreshAsync(current);
+    }
+
+    /**
+     * Called when Salesforce rejected a session, logs in again unless another thread already replaced it
+     * @param stale the session that was rejected, null if there was none
+     */
+    SfdcSession refresh(SfdcSession stale) throws IOException {
+        CompletableFuture<SfdcSession> future;
+        boolean owner = false;
+        synchronized (lock) {
+            SfdcSession current = session;
+            if (current != null && current != stale && !current.isExpired()) {
+                return current;
+            }
+            if (inFlight == null) {
+                inFlight = new CompletableFuture<>();
+                owner = true;
+            }
+            future = inFlight;
+        }
+        if (owner) {
+            runLogin(future);
+        }
+        return await(future);
+    }
+
+    /**
+     * Non blocking version of {@link #refresh(SfdcSession)}, the login runs on the executor
+     */
+    CompletableFuture<SfdcSession> refreshAsync(SfdcSession stale) {
+        CompletableFuture<SfdcSession> future;
+        synchronized (lock) {
+            SfdcSession current = session;
+            if (current != null && current != stale && !current.isExpired()) {
+                return CompletableFuture.completedFuture(current);
+            }
+            if (inFlight != null) {
+                return inFlight;
+            }
+            future = new CompletableFuture<>();
+            inFlight = future;
+        }
+        try {
+            executor.execute(() -> runLogin(future));
+        } catch (RuntimeException e) {
+            // Executor shut down, do not leave waiters hanging
+            finish(future, null, e);
+        }
+        return future;
+    }
+
+    private void renewIfExpiring(SfdcSession current) {
+        if (current.isExpiring(REFRESH_MARGIN_MILLIS)) {
+            refreshAsync(current).whenComplete((renewed, throwable) -> {
+                if (throwable != null) {
+                    // The current session is still good until it expires, the next caller will try again
+                    logger.log(Level.WARNING, "Could not renew expiring Salesforce session", throwable);
+                }
+            });
+        }
+    }
+
+    private void runLogin(CompletableFuture<SfdcSession> future) {
+        try {
+            SfdcSession loggedIn = login.login();
+            session = loggedIn;
+            finish(future, loggedIn, null);
+        } catch (IOException | RuntimeException e) {
+            finish(future, null, e);
+        }
+    }
+
+    private void finish(CompletableFuture<SfdcSession> future, SfdcSession loggedIn, Throwable failure) {
+        synchronized (lock) {
+            if (inFlight == future) {
+                inFlight = null;
+            }
+        }
+        if (failure == null) {
+            future.complete(loggedIn);
+        } else {
+            future.completeExceptionally(failure);
+        }
+    }
+
+    private static SfdcSession await(CompletableFuture<SfdcSession> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Could not log in to Salesforce " + cause.getMessage(), cause);
+        }
+    }
+
+    @FunctionalInterface
+    interface Login {
+        SfdcSession login() throws IOException;
+    }
+}
@@ -0,0 +1,21 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+
+/**
+ * Keeps sessions between runs, so that a new client (in a new JVM) can reuse the session of the last one instead of
+ * logging in again. See {@link SfdcClient#setSessionStore(SessionStore)} and {@link FileSessionStore}.
+ * Implementations must be thread safe, one store may be shared by several clients.
+ */
+public interface SessionStore {
+    /**
+     * @param key identifies the user and login host the session belongs to
+     * @return the last saved session, null if there is none
+     */
+    SfdcSession load(String key) throws IOException;
+
+    /**
+     * Called after every login, replacing the saved session of the key
+     */
+    void save(String key, SfdcSession session) throws IOException;
+}
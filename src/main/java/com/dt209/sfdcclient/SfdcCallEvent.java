@@ -0,0 +1,88 @@
+package com.dt209.sfdcclient;
+
+/**
+ * Measurements of a single call to Salesforce, see {@link SfdcListener#onCall(SfdcCallEvent)}
+ */
+public class SfdcCallEvent {
+    private final String operation;
+    private final long requestBytes;
+    private final long responseBytes;
+    private final long networkNanos;
+    private final long parseNanos;
+    private final Throwable error;
+
+    public SfdcCallEvent(String operation, long requestBytes, long responseBytes, long networkNanos, long parseNanos,
+                         Throwable error) {
+        this.operation = operation;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.networkNanos = networkNanos;
+        this.parseNanos = parseNanos;
+        this.error = error;
+    }
+
+    /**
+     * @return such as login, query, queryMore, update, upsert or delete
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return size of the request body, -1 if not known
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * @return number of response body bytes read, can be less than the response when reading stopped early
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * @return time spent sending the request, waiting for the response and waiting for response bytes to arrive.
+     * For asynchronous calls this includes the time queued on the transport's dispatcher.
+     */
+    public long getNetworkNanos() {
+        return networkNanos;
+    }
+
+    /**
+     * @return time spent parsing the response and handing records to the caller, with waits for data excluded
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    public long getTotalNanos() {
+        return networkNanos + parseNanos;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return why the call failed, null if it succeeded
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return code of the SOAP fault the call failed with, null if it succeeded or failed otherwise
+     */
+    public String getFaultCode() {
+        return error instanceof SfdcFaultException ? ((SfdcFaultException) error).getFaultCode() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "SfdcCallEvent{operation=" + operation + ", requestBytes=" + requestBytes + ", responseBytes="
+                + responseBytes + ", networkNanos=" + networkNanos + ", parseNanos=" + parseNanos
+                + (error == null ? "" : ", error=" + error) + "}";
+    }
+}
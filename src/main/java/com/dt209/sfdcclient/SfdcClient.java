@@ -1,42 +1,69 @@
 package com.dt209.sfdcclient;
 
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
-import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.HttpUrl;
 import okhttp3.HttpUrl.Builder;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
-import org.apache.commons.lang3.ClassUtils;
-import org.apache.commons.text.StringEscapeUtils;
+import okio.ByteString;
+import okio.Okio;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-public class SfdcClient {
+public class SfdcClient implements Closeable {
     private static final String SFDC_DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZZZ";
+    private static final DateTimeFormatter SFDC_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ")
+            .withZone(ZoneOffset.UTC);
+    /**
+     * Also reads fractions of a second and offsets such as Z or +00:00, as in the dateTimes Salesforce returns
+     */
+    private static final DateTimeFormatter SFDC_DATE_TIME_PARSER = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd'T'HH:mm:ss")
+            .optionalStart().appendFraction(ChronoField.NANO_OF_SECOND, 0, 9, true).optionalEnd()
+            .optionalStart().appendOffset("+HH:MM", "Z").optionalEnd()
+            .optionalStart().appendOffset("+HHMM", "Z").optionalEnd()
+            .toFormatter();
 
     private final Logger logger = Logger.getLogger(this.getClass().getName());
 
@@ -64,25 +91,90 @@ public class SfdcClient {
     //https://test.salesforce.com/services/Soap/c/24.0/
     //https://MyDomain.my.salesforce.com/services/Soap/c/24.0/
 
-    private static final MediaType MEDIA_TYPE = MediaType.parse("text/xml; charset=UTF-8");
-
     /**
-     * NOTE THIS IS SHARED AMONGST INSTANCES OF THIS CLASS!
+     * Most records the Partner API accepts in a single create/update/upsert/delete call
      */
-    private static String sessionId;
+    public static final int MAX_RECORDS_PER_CALL = 200;
     /**
-     * NOTE THIS IS SHARED AMONGST INSTANCES OF THIS CLASS!
+     * Most IDs the Partner API accepts in a single retrieve call
      */
-    private static String serverUrl;
+    public static final int MAX_RETRIEVE_IDS = 2000;
+
+    private static final MediaType MEDIA_TYPE = SoapRequestBody.MEDIA_TYPE;
+
+    private static final ByteString QUERY_STRING_START = ByteString.encodeUtf8("><n1:queryString>");
+    private static final ByteString QUERY_STRING_END = ByteString.encodeUtf8("</n1:queryString></n1:");
+    private static final ByteString QUERY_MORE_START = ByteString.encodeUtf8("<n1:queryMore><n1:queryLocator>");
+    private static final ByteString QUERY_MORE_END = ByteString.encodeUtf8("</n1:queryLocator></n1:queryMore>");
+    private static final ByteString CREATE_START = ByteString.encodeUtf8("<n1:create>");
+    private static final ByteString CREATE_END = ByteString.encodeUtf8("</n1:create>");
+    private static final ByteString UPDATE_START = ByteString.encodeUtf8("<n1:update>");
+    private static final ByteString UPDATE_END = ByteString.encodeUtf8("</n1:update>");
+    private static final ByteString UPSERT_START = ByteString.encodeUtf8("<n1:upsert><n1:externalIDFieldName>");
+    private static final ByteString UPSERT_EXTERNAL_ID_END = ByteString.encodeUtf8("</n1:externalIDFieldName>");
+    private static final ByteString UPSERT_END = ByteString.encodeUtf8("</n1:upsert>");
+    private static final ByteString DESCRIBE_SOBJECT_START = ByteString.encodeUtf8("<n1:describeSObject><n1:sObjectType>");
+    private static final ByteString DESCRIBE_SOBJECT_END = ByteString.encodeUtf8("</n1:sObjectType></n1:describeSObject>");
+    private static final ByteString RETRIEVE_START = ByteString.encodeUtf8("<n1:retrieve>");
+    private static final ByteString RETRIEVE_END = ByteString.encodeUtf8("</n1:retrieve>");
+    private static final ByteString DELETE_START = ByteString.encodeUtf8("<n1:delete>");
+    private static final ByteString DELETE_END = ByteString.encodeUtf8("</n1:delete>");
+    private static final ByteString IDS_START = ByteString.encodeUtf8("<n1:ids>");
+    private static final ByteString IDS_END = ByteString.encodeUtf8("</n1:ids>");
+
+    private static final SoapResponseParser.ResultFactory<SaveResult> SAVE_RESULT =
+            (id, success, created, errors) -> new SaveResult(id, success, errors);
+    private static final SoapResponseParser.ResultFactory<UpsertResult> UPSERT_RESULT = UpsertResult::new;
+    private static final SoapResponseParser.ResultFactory<DeleteResult> DELETE_RESULT =
+            (id, success, created, errors) -> new DeleteResult(id, success, errors);
 
     private final String username;
     private final String password;
     private final HttpUrl loginUrl;
     private final String soapPath;
     private final String securityToken;
+    private final SfdcTransport transport;
+    private final boolean ownsTransport;
+    /**
+     * Session of this client's credentials, not shared with other instances
+     */
+    private final SessionManager sessionManager;
+    /**
+     * Optional, see {@link #setQueryCache(QueryCache)}
+     */
+    private volatile QueryCache queryCache;
+    /**
+     * See {@link #setListener(SfdcListener)}
+     */
+    private volatile SfdcListener listener = SfdcListener.NONE;
+    /**
+     * Optional, see {@link #setRequestGovernor(RequestGovernor)}
+     */
+    private volatile RequestGovernor requestGovernor;
+    /**
+     * Optional, see {@link #setDescribeCache(DescribeCache)}
+     */
+    private volatile DescribeCache describeCache;
+    /**
+     * Optional, see {@link #setSessionStore(SessionStore)}
+     */
+    private volatile SessionStore sessionStore;
+    /**
+     * Set once the session store was asked for a saved session, later logins always call Salesforce
+     */
+    private final AtomicBoolean sessionRestored = new AtomicBoolean();
+    /**
+     * Session of the last {@link #login()}, taken by {@link #loginSession()}. The session manager runs one login at
+     * a time.
+     */
+    private SfdcSession loggedIn;
+    /**
+     * Runs background work such as query prefetching, created on first use
+     */
+    private ExecutorService executor;
 
     /**
-     *
+     * Creates a client with its own {@link SfdcTransport}, released by {@link #close()}
      * @param host  Can be one of the constants above or one of your own making (allowing for proxying)
      * @param soapPath See above constant as a default
      * @param username Username with enabled API access
@@ -90,22 +182,234 @@ public class SfdcClient {
      * @param securityToken Security Token for username with enabled API access
      */
     public SfdcClient(String host, String soapPath, String username, String password, String securityToken) {
-        loginUrl = new Builder()
+        this(host, soapPath, username, password, securityToken, new SfdcTransport(), true);
+    }
+
+    /**
+     * Creates a client on top of a transport that may be shared with other clients, {@link #close()} leaves it open
+     * @param host  Can be one of the constants above or one of your own making (allowing for proxying)
+     * @param soapPath See above constant as a default
+     * @param username Username with enabled API access
+     * @param password Password for username with enabled API access
+     * @param securityToken Security Token for username with enabled API access
+     * @param transport HTTP transport to use, see {@link SfdcTransport#builder()}
+     */
+    public SfdcClient(String host, String soapPath, String username, String password, String securityToken,
+                      SfdcTransport transport) {
+        this(host, soapPath, username, password, securityToken, transport, false);
+    }
+
+    /**
+     * Creates a client that logs in at the given URL, for proxies and local stand-ins that do not follow the
+     * https://host/soapPath pattern. {@link #close()} leaves the transport open.
+     * @param loginUrl full URL of the SOAP login endpoint, such as https://login.salesforce.com/services/Soap/u/42.0
+     * @param username Username with enabled API access
+     * @param password Password for username with enabled API access
+     * @param securityToken Security Token for username with enabled API access
+     * @param transport HTTP transport to use, see {@link SfdcTransport#builder()}
+     */
+    public SfdcClient(HttpUrl loginUrl, String username, String password, String securityToken,
+                      SfdcTransport transport) {
+        this(loginUrl, username, password, securityToken, transport, false);
+    }
+
+    private SfdcClient(String host, String soapPath, String username, String password, String securityToken,
+                       SfdcTransport transport, boolean ownsTransport) {
+        this(new Builder()
                 .scheme("https")
                 .host(host)
                 .addPathSegments(soapPath)
-                .build();
+                .build(), username, password, securityToken, transport, ownsTransport);
+    }
+
+    private SfdcClient(HttpUrl loginUrl, String username, String password, String securityToken,
+                       SfdcTransport transport, boolean ownsTransport) {
+        this.loginUrl = loginUrl;
         this.username = username;
         this.password = password;
         this.securityToken = securityToken;
-        this.soapPath = soapPath;
+        this.soapPath = loginUrl.encodedPath();
+        this.transport = transport;
+        this.ownsTransport = ownsTransport;
+        this.sessionManager = new SessionManager(this::restoreOrLogin, runnable -> executor().execute(runnable));
+    }
+
+    /**
+     * Releases the HTTP transport if it was created by this client
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        if (ownsTransport) {
+            transport.close();
+        }
+    }
+
+    /**
+     * @return executor for background work, uses daemon threads so that an unclosed client does not keep the JVM alive
+     */
+    synchronized ExecutorService executor() {
+        if (executor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "sfdcclient-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Caches the results of {@link #query(String)} and {@link #selectFields(String, Collection, String)}.
+     * Create, update, upsert and delete calls through this client drop cached results of the sObject type written to.
+     * @param queryCache null to turn caching off
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Reports latency, sizes, faults, re-logins and API limits of every call this client makes,
+     * see {@link SfdcMetrics} for a ready made listener
+     * @param listener null to stop reporting
+     */
+    public void setListener(SfdcListener listener) {
+        this.listener = listener == null ? SfdcListener.NONE : listener;
+    }
+
+    public SfdcListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Paces the calls of this client and retries those that failed with a retryable fault (see
+     * {@link SfdcFaultException#isRetryable()}). Logins are not paced.
+     * @param requestGovernor null to send calls right away and never retry them, the default
+     */
+    public void setRequestGovernor(RequestGovernor requestGovernor) {
+        this.requestGovernor = requestGovernor;
+    }
+
+    public RequestGovernor getRequestGovernor() {
+        return requestGovernor;
+    }
+
+    /**
+     * Keeps describeSObject results for {@link #describeSObject(String)} and {@link #queryTyped(String)}. Also makes
+     * create, update and upsert format values per field type and reject fields the sObject type does not have
+     * before calling Salesforce. Asynchronous writes only use metadata that is already cached.
+     * @param describeCache null to describe on every call and format values by their Java type only, the default
+     */
+    public void setDescribeCache(DescribeCache describeCache) {
+        this.describeCache = describeCache;
+    }
+
+    public DescribeCache getDescribeCache() {
+        return describeCache;
     }
 
     /**
-     * Called to do a login when needed. Note that logins are "lazy" and are only called when existing tokens expire
-     * or if
+     * Reuses the session saved by the last client with the same username and login URL instead of logging in, and
+     * saves the session of every login. A saved session that Salesforce rejects is replaced by a new login.
+     * Set it before the first call.
+     * @param sessionStore null to always log in, the default
+     */
+    public void setSessionStore(SessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+    }
+
+    public SessionStore getSessionStore() {
+        return sessionStore;
+    }
+
+    /**
+     * Logs in (or restores the saved session) and makes a getServerTimestamp call, so that the connection and TLS
+     * session to the instance are open and the session is known to be valid before the first real call
+     */
+    public void warmUp() throws IOException {
+        getServerTimestamp();
+    }
+
+    /**
+     * @return current session, logging in first if there is none yet or it is about to expire
+     */
+    public SfdcSession getSession() throws IOException {
+        return sessionManager.get();
+    }
+
+    /**
+     * Logs in again after Salesforce rejected the session (or waits for another thread doing so)
+     */
+    SfdcSession refreshSession(SfdcSession stale) throws IOException {
+        return sessionManager.refresh(stale);
+    }
+
+    SfdcTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Login for the session manager: the saved session on the first call if it is still good, a login otherwise
+     */
+    private SfdcSession restoreOrLogin() throws IOException {
+        SessionStore store = sessionStore;
+        if (store == null) {
+            return loginSession();
+        }
+        String key = username + "@" + loginUrl;
+        if (sessionRestored.compareAndSet(false, true)) {
+            try {
+                SfdcSession saved = store.load(key);
+                if (saved != null && !saved.isExpiring(SessionManager.REFRESH_MARGIN_MILLIS)) {
+                    logger.fine(() -> "Reusing saved session " + saved);
+                    return saved;
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "Could not read saved session of " + username + ", logging in", e);
+            }
+        }
+        SfdcSession session = loginSession();
+        try {
+            store.save(key, session);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Could not save session of " + username, e);
+        }
+        return session;
+    }
+
+    /**
+     * Runs the {@link #login()} hook and takes the session it logged in with
+     */
+    private SfdcSession loginSession() throws IOException {
+        loggedIn = null;
+        login();
+        SfdcSession session = loggedIn;
+        loggedIn = null;
+        if (session == null) {
+            throw new IOException("No Salesforce session after login(), overrides must call super.login()");
+        }
+        return session;
+    }
+
+    /**
+     * Called to do a login when needed. Note that logins are "lazy" and are only called when there is no session yet,
+     * when it is about to expire (per sessionSecondsValid of the last login) or when Salesforce rejects it.
+     * Concurrent callers share a single login, see {@link SessionManager}. Overrides must call super.login().
      */
     protected void login() throws IOException {
+        loggedIn = requestLogin();
+    }
+
+    private SfdcSession requestLogin() throws IOException {
         String loginXml = "<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n"
                 + "<env:Envelope xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\"\n"
                 + "    xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
@@ -118,7 +422,8 @@ public class SfdcClient {
                 + "    </n1:login>\n"
                 + "  </env:Body>\n"
                 + "</env:Envelope>";
-        RequestBody body = RequestBody.create(MEDIA_TYPE, loginXml);
+        byte[] loginBytes = loginXml.getBytes(StandardCharsets.UTF_8);
+        RequestBody body = RequestBody.create(MEDIA_TYPE, loginBytes);
 
         Request request = new Request.Builder()
                 .url(loginUrl)
@@ -126,14 +431,40 @@ public class SfdcClient {
                 .post(body)
                 .build();
 
-        Response response = new OkHttpClient().newCall(request).execute();
-        String responseBody = response.body().string();
+        SfdcListener listener = this.listener;
+        if (listener == SfdcListener.NONE) {
+            return login(request, loginXml, null);
+        }
+        CallRecorder recorder = new CallRecorder(listener, "login");
+        recorder.requestBytes(loginBytes.length);
+        try {
+            SfdcSession session = login(request, loginXml, recorder);
+            recorder.finished(null);
+            return session;
+        } catch (IOException | RuntimeException e) {
+            recorder.finished(e);
+            throw e;
+        }
+    }
+
+    private SfdcSession login(Request request, String loginXml, CallRecorder recorder) throws IOException {
+        byte[] responseBody;
+        try (Response response = transport.getHttpClient().newCall(request).execute()) {
+            InputStream inputStream = response.body().byteStream();
+            if (recorder != null) {
+                inputStream = recorder.responseStream(inputStream);
+            }
+            responseBody = Okio.buffer(Okio.source(inputStream)).readByteArray();
+        }
         if(logger.isLoggable(Level.FINEST)) {
-            logger.finest("Login response body: " + responseBody);
+            logger.finest("Login response body: " + new String(responseBody, StandardCharsets.UTF_8));
         }
 
-        NodeList nList = getNodeList(new ByteArrayInputStream(responseBody.getBytes()), "result", loginXml);
+        NodeList nList = getNodeList(new ByteArrayInputStream(responseBody), "result", loginXml);
 
+        String serverUrl = null;
+        String sessionId = null;
+        long secondsValid = SfdcSession.DEFAULT_SECONDS_VALID;
         for (int temp = 0; temp < nList.getLength(); temp++) {
             Node nNode = nList.item(temp);
             if (nNode.getNodeType() == Node.ELEMENT_NODE) {
@@ -144,12 +475,17 @@ public class SfdcClient {
 
                 serverUrl = getText(eElement, "serverUrl");
                 sessionId = getText(eElement, "sessionId");
+                NodeList sessionSecondsValid = eElement.getElementsByTagName("sessionSecondsValid");
+                if (sessionSecondsValid.getLength() > 0) {
+                    secondsValid = Long.parseLong(sessionSecondsValid.item(0).getTextContent().trim());
+                }
             }
         }
         if (serverUrl == null || sessionId == null) {
             throw new IOException("Was not able to obtain Salesforce server URL nor Session ID from " + loginUrl.host() + " when trying to log in as " + username);
         }
         // Now logged in.
+        return new SfdcSession(sessionId, serverUrl, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(secondsValid));
     }
 
     /**
@@ -166,67 +502,297 @@ public class SfdcClient {
     }
 
     /**
+     * Only returns the first batch of results (500 rows by default), use {@link #queryCursor(String)} to read them all
      * @param queryString Please escape anything if needed. (Exapmle code: StringEscapeUtils.escapeXml10(fieldValueToEscape)))
      * @see <a href="https://developer.salesforce.com/docs/atlas.en-us.soql_sosl.meta/soql_sosl/sforce_api_calls_soql_select_examples.htm#!">https://developer.salesforce.com/docs/atlas.en-us.soql_sosl.meta/soql_sosl/sforce_api_calls_soql_select_examples.htm#!</a>
      */
     public List<Map<String, String>> query(String queryString) throws IOException {
-        String xml = "<n1:query><n1:queryString>" +queryString+ "</n1:queryString></n1:query>";
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            return cache.get(queryString, () -> queryUncached(queryString));
+        }
+        return queryUncached(queryString);
+    }
+
+    private List<Map<String, String>> queryUncached(String queryString) throws IOException {
         List<Map<String, String>> result = new ArrayList<>(); // Keeps order of results
+        query(queryString, result::add);
+        return result;
+    }
+
+    /**
+     * Streaming version of {@link #query(String)}, records are read straight from the response and passed to the
+     * handler one at a time, so memory used does not grow with the size of the batch.
+     * @param queryString Please escape anything if needed. (Exapmle code: StringEscapeUtils.escapeXml10(fieldValueToEscape)))
+     * @param handler called for each record, in order
+     * @return total number of rows matched by the query as reported by Salesforce, can be more than the number of
+     * records passed to the handler when the result does not fit into one batch
+     */
+    public int query(String queryString, RecordHandler handler) throws IOException {
+        SoapRequest request = queryRequest("query", "", queryString);
+        return runStreamingRequest(request, (inputStream, headers) -> SoapResponseParser.readQueryResult(inputStream, handler, request, headers)).size;
+    }
 
-        NodeList nList = runRequest(xml, "records");
+    /**
+     * Compact version of {@link #query(String)}, rows share one field name to column mapping instead of holding
+     * a HashMap each. Only returns the first batch of results.
+     * @param queryString Please escape anything if needed. (Exapmle code: StringEscapeUtils.escapeXml10(fieldValueToEscape)))
+     */
+    public RecordSet queryRecords(String queryString) throws IOException {
+        RecordSet recordSet = new RecordSet();
+        SoapRequest request = queryRequest("query", "", queryString);
+        runStreamingRequest(request, (inputStream, headers) -> SoapResponseParser.readQueryResult(inputStream, recordSet.sink(), request, headers));
+        return recordSet;
+    }
 
-        for (int outer = 0; outer < nList.getLength(); outer++) {
-            Node nNode = nList.item(outer);
-            if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-                Element eElement = (Element) nNode;
-                NodeList childNodes = eElement.getChildNodes();
-                Map<String, String> row = new HashMap<>();
-                for (int inner = 0; inner < childNodes.getLength(); inner++) {
-                    Node childNode = childNodes.item(inner);
-                    if (childNode.getNodeType() == Node.ELEMENT_NODE) {
-                        Element childElement = (Element) childNode;
-                        String key = childElement.getNodeName();
-                        if (key.contains(":")) {
-                            key = key.substring(key.indexOf(":")+1);
-                        }
-                        String value = childElement.getTextContent();
-                        row.put(key, value);
-                    }
-                }
-                result.add(row);
-            }
+    /**
+     * Compact version of {@link #query(String)} that returns all rows, following queryMore until done
+     * @param queryString Please escape anything if needed. (Exapmle code: StringEscapeUtils.escapeXml10(fieldValueToEscape)))
+     * @param options batch size and queryAll, prefetching does not apply
+     */
+    public RecordSet queryRecords(String queryString, QueryOptions options) throws IOException {
+        RecordSet recordSet = new RecordSet();
+        readAllRecords(queryString, options, recordSet.sink());
+        return recordSet;
+    }
+
+    /**
+     * Version of {@link #queryRecords(String, QueryOptions)} for results that may not fit in the heap: rows beyond
+     * maxHeapBytes are written to a temporary file, see {@link SpillingRecordSet}. Close the result to delete it.
+     * @param queryString Please escape anything if needed. (Exapmle code: StringEscapeUtils.escapeXml10(fieldValueToEscape)))
+     * @param options batch size and queryAll, prefetching does not apply
+     * @param maxHeapBytes estimated heap use of the rows kept in memory
+     */
+    public SpillingRecordSet queryRecords(String queryString, QueryOptions options, long maxHeapBytes) throws IOException {
+        SpillingRecordSet recordSet = new SpillingRecordSet(maxHeapBytes);
+        try {
+            readAllRecords(queryString, options, recordSet.sink());
+        } catch (IOException | RuntimeException e) {
+            recordSet.close();
+            throw e;
         }
+        return recordSet;
+    }
+
+    private void readAllRecords(String queryString, QueryOptions options, SoapResponseParser.RecordSink sink)
+            throws IOException {
+        String operation = options.isIncludeDeleted() ? "queryAll" : "query";
+        SoapRequest first = queryRequest(operation, options.toHeaderXml(), queryString);
+        QueryBatch batch = runStreamingRequest(first, (inputStream, headers) -> SoapResponseParser.readQueryResult(inputStream, sink, first, headers));
+        while (!batch.done && batch.queryLocator != null) {
+            SoapRequest more = queryMoreRequest(batch.queryLocator, options);
+            batch = runStreamingRequest(more, (inputStream, headers) -> SoapResponseParser.readQueryResult(inputStream, sink, more, headers));
+        }
+    }
+
+    /**
+     * Returns all rows of the query, not just the first batch, following queryMore as the cursor is read.
+     * The next batch is fetched in the background while the current one is being processed.
+     * Close the cursor when not reading it to the end.
+     * @param queryString Please escape anything if needed. (Exapmle code: StringEscapeUtils.escapeXml10(fieldValueToEscape)))
+     * @param options batch size, queryAll and prefetching
+     */
+    public QueryCursor queryCursor(String queryString, QueryOptions options) throws IOException {
+        return new QueryCursor(this, queryString, options);
+    }
+
+    /**
+     * @see #queryCursor(String, QueryOptions)
+     */
+    public QueryCursor queryCursor(String queryString) throws IOException {
+        return queryCursor(queryString, new QueryOptions());
+    }
+
+    /**
+     * Stream of all rows of the query, close it when not reading it to the end.
+     * @see #queryCursor(String, QueryOptions)
+     */
+    public Stream<Map<String, String>> queryStream(String queryString, QueryOptions options) throws IOException {
+        return queryCursor(queryString, options).stream();
+    }
+
+    /**
+     * Reads all rows of a large query over several cursors at the same time, see {@link PartitionedQuery}.
+     * Close it when not reading it to the end.
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param fields Salesforce Object fields to return
+     * @param condition where clause without WHERE, null for all rows. Values should be escaped!
+     * @param options batch size, queryAll, parallelism, number of partitions and the field to split on
+     */
+    public PartitionedQuery queryPartitioned(String sfdcObjectType, Collection<String> fields, String condition,
+                                             QueryOptions options) throws IOException {
+        return new PartitionedQuery(this, sfdcObjectType, fields, condition, options);
+    }
+
+    /**
+     * Typed version of {@link #query(String)}: values are decoded per the describe metadata of the queried sObject
+     * type while being parsed, see {@link ValueCodec} for the types. Only returns the first batch of results.
+     * @param queryString Please escape anything if needed. (Exapmle code: StringEscapeUtils.escapeXml10(fieldValueToEscape)))
+     */
+    public List<Map<String, Object>> queryTyped(String queryString) throws IOException {
+        List<Map<String, Object>> result = new ArrayList<>();
+        queryTyped(queryString, result::add);
         return result;
     }
 
     /**
+     * Streaming version of {@link #queryTyped(String)}
+     * @param handler called for each record, in order
+     * @return total number of rows matched by the query as reported by Salesforce
+     */
+    public int queryTyped(String queryString, TypedRecordHandler handler) throws IOException {
+        String sfdcObjectType = QueryCache.objectTypeOf(QueryCache.normalize(queryString));
+        SObjectDescribe describe = sfdcObjectType == null ? null : describeSObject(sfdcObjectType);
+        SoapRequest request = queryRequest("query", "", queryString);
+        return runStreamingRequest(request, (inputStream, headers) ->
+                SoapResponseParser.readQueryResult(inputStream, describe, handler, request, headers)).size;
+    }
+
+    /**
+     * Field metadata of an sObject type, served from the {@link DescribeCache} if one is set
      * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
-     * @param sfdcObject an object with field names that exactly match those in Sales Force and with values that are in a valid format for the Saleseforce object that is being updated.
      */
-    public void update(final String sfdcObjectType, final Map<String,Object> sfdcObject) throws IOException {
+    public SObjectDescribe describeSObject(String sfdcObjectType) throws IOException {
+        DescribeCache cache = describeCache;
+        if (cache != null) {
+            return cache.get(sfdcObjectType, () -> describeSObjectUncached(sfdcObjectType));
+        }
+        return describeSObjectUncached(sfdcObjectType);
+    }
 
-        if (!sfdcObject.containsKey("id")) {
-            throw new IOException("The Salesforce Object does not have an \"id\" key. Please add one and submit it again");
+    private SObjectDescribe describeSObjectUncached(String sfdcObjectType) throws IOException {
+        SoapRequest request = new SoapRequest("describeSObject", writer -> writer
+                .raw(DESCRIBE_SOBJECT_START).escaped(sfdcObjectType).raw(DESCRIBE_SOBJECT_END));
+        return runStreamingRequest(request,
+                (inputStream, headers) -> SoapResponseParser.readDescribeSObject(inputStream, request, headers));
+    }
+
+    /**
+     * @return current time on the Salesforce server, use it rather than the local clock for replication windows
+     */
+    public Instant getServerTimestamp() throws IOException {
+        SoapRequest request = SoapRequest.ofXml("getServerTimestamp", "<n1:getServerTimestamp/>");
+        return runStreamingRequest(request,
+                (inputStream, headers) -> SoapResponseParser.readServerTimestamp(inputStream, request, headers));
+    }
+
+    /**
+     * IDs of records created or updated in a time window, for replication. The sObject type must be replicateable.
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param start no more than 30 days ago, rounded down to the minute by Salesforce
+     * @param end rounded down to the minute by Salesforce
+     * @throws SfdcFaultException with INVALID_REPLICATION_DATE if the window starts too far back, or
+     * EXCEEDED_ID_LIMIT if more than 600,000 records changed in it
+     */
+    public GetUpdatedResult getUpdated(String sfdcObjectType, Instant start, Instant end) throws IOException {
+        SoapRequest request = replicationRequest("getUpdated", sfdcObjectType, start, end);
+        return runStreamingRequest(request,
+                (inputStream, headers) -> SoapResponseParser.readGetUpdated(inputStream, request, headers));
+    }
+
+    /**
+     * Records deleted in a time window, for replication
+     * @see #getUpdated(String, Instant, Instant)
+     */
+    public GetDeletedResult getDeleted(String sfdcObjectType, Instant start, Instant end) throws IOException {
+        SoapRequest request = replicationRequest("getDeleted", sfdcObjectType, start, end);
+        return runStreamingRequest(request,
+                (inputStream, headers) -> SoapResponseParser.readGetDeleted(inputStream, request, headers));
+    }
+
+    /**
+     * Reads records by ID, MAX_RETRIEVE_IDS at a time
+     * @param fields Salesforce Object fields to return
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param handler called for each record found, in the order of the ids. There is no record for ids of deleted
+     *                or unknown records.
+     * @return number of records found
+     */
+    public int retrieve(Collection<String> fields, String sfdcObjectType, List<String> ids, RecordHandler handler)
+            throws IOException {
+        String fieldList = String.join(",", fields);
+        int found = 0;
+        for (int start = 0; start < ids.size(); start += MAX_RETRIEVE_IDS) {
+            List<String> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_RETRIEVE_IDS));
+            SoapRequest request = new SoapRequest("retrieve", writer -> {
+                writer.raw(RETRIEVE_START).element("n1:fieldList", fieldList)
+                        .element("n1:sObjectType", sfdcObjectType);
+                for (String id : chunk) {
+                    writer.raw(IDS_START).escaped(id).raw(IDS_END);
+                }
+                writer.raw(RETRIEVE_END);
+            });
+            found += runStreamingRequest(request,
+                    (inputStream, headers) -> SoapResponseParser.readRetrieveResult(inputStream, handler, request, headers));
         }
+        return found;
+    }
 
-        Map<String, Object> map = new HashMap<>(sfdcObject);
-        String id = map.get("id").toString();
-        map.remove("id");
+    private static SoapRequest replicationRequest(String operation, String sfdcObjectType, Instant start, Instant end) {
+        return new SoapRequest(operation, writer -> writer
+                .raw("<n1:").raw(operation).raw(">")
+                .element("n1:sObjectType", sfdcObjectType)
+                .element("n1:startDate", ValueCodec.formatDateTime(start))
+                .element("n1:endDate", ValueCodec.formatDateTime(end))
+                .raw("</n1:").raw(operation).raw(">"));
+    }
 
-        StringBuilder objectFields = makeObjectFieldXml(map);
+    /**
+     * @return describe of the type if writes should use metadata, see {@link #setDescribeCache(DescribeCache)}
+     */
+    private SObjectDescribe describeForWrite(String sfdcObjectType) throws IOException {
+        DescribeCache cache = describeCache;
+        return cache == null ? null : describeSObject(sfdcObjectType);
+    }
 
-        String xml = "<n1:update>"
-                + "<n1:sObjects>"
-                + "     <n2:type>"+ sfdcObjectType+ "</n2:type>"
-                + "     <n2:id>"+ id +"</n2:id>"
-                +       objectFields
-                + "</n1:sObjects>"
-                + "</n1:update>";
+    /**
+     * Same as {@link #describeForWrite(String)} but never calls Salesforce, for asynchronous writes
+     */
+    private SObjectDescribe cachedDescribeForWrite(String sfdcObjectType) {
+        DescribeCache cache = describeCache;
+        return cache == null ? null : cache.getIfPresent(sfdcObjectType);
+    }
 
-        runRequest(xml, "Body");
+    /**
+     * First batch of a query or queryAll
+     */
+    QueryBatch queryBatch(String queryString, QueryOptions options, RecordHandler handler) throws IOException {
+        String operation = options.isIncludeDeleted() ? "queryAll" : "query";
+        SoapRequest request = queryRequest(operation, options.toHeaderXml(), queryString);
+        return runStreamingRequest(request, (inputStream, headers) -> SoapResponseParser.readQueryResult(inputStream, handler, request, headers));
     }
 
+    /**
+     * Next batch of a query or queryAll
+     */
+    QueryBatch queryMoreBatch(String queryLocator, QueryOptions options, RecordHandler handler) throws IOException {
+        SoapRequest request = queryMoreRequest(queryLocator, options);
+        return runStreamingRequest(request, (inputStream, headers) -> SoapResponseParser.readQueryResult(inputStream, handler, request, headers));
+    }
 
+    /**
+     * Non blocking version of {@link #queryMoreBatch(String, QueryOptions, RecordHandler)}, cancelling the returned
+     * future cancels the HTTP call
+     */
+    CompletableFuture<QueryBatch> queryMoreBatchAsync(String queryLocator, QueryOptions options, RecordHandler handler) {
+        SoapRequest request = queryMoreRequest(queryLocator, options);
+        return runAsyncRequest(request, (inputStream, headers) -> SoapResponseParser.readQueryResult(inputStream, handler, request, headers));
+    }
+
+    /**
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param sfdcObject an object with field names that exactly match those in Sales Force and with values that are in a valid format for the Saleseforce object that is being updated.
+     */
+    public void update(final String sfdcObjectType, final Map<String,Object> sfdcObject) throws IOException {
+        checkHasId(sfdcObject);
+        SoapRequest request = updateRequest(encode(sfdcObjectType, Collections.singletonList(sfdcObject), true,
+                describeForWrite(sfdcObjectType)));
+        try {
+            runResultRequest(request, SAVE_RESULT);
+        } finally {
+            invalidateCache(sfdcObjectType);
+        }
+    }
 
     /**
      * Insert or Update sfdcObjectType (inserts if not found, updates if externalIdFieldName matches an existing one)
@@ -237,25 +803,203 @@ public class SfdcClient {
      */
     public String upsert(String externalIdFieldName, String sfdcObjectType, Map<String,Object> sfdcObject)
             throws IOException {
-        StringBuilder objectFields = makeObjectFieldXml(sfdcObject);
+        SoapRequest request = upsertRequest(externalIdFieldName, encode(sfdcObjectType,
+                Collections.singletonList(sfdcObject), false, describeForWrite(sfdcObjectType)));
+        try {
+            return runResultRequest(request, UPSERT_RESULT).get(0).getId();
+        } finally {
+            invalidateCache(sfdcObjectType);
+        }
+    }
+
+    /**
+     * @param id The ID of the sfdcObject to be deleted
+     */
+    public boolean delete(String id) throws IOException {
+        try {
+            return runResultRequest(deleteRequest(Collections.singletonList(id)), DELETE_RESULT).get(0).isSuccess();
+        } finally {
+            invalidateCacheById(Collections.singletonList(id));
+        }
+    }
 
-        String xml = "<n1:upsert>"
-                +"<n1:externalIDFieldName>"+ externalIdFieldName+ "</n1:externalIDFieldName>"
-                + "<n1:sObjects>"
-                + "     <n2:type>"+ sfdcObjectType+ "</n2:type>"
-                +       objectFields
-                + "</n1:sObjects>"
-                + "</n1:upsert>";
+    /**
+     * Creates the records, MAX_RECORDS_PER_CALL at a time
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param sfdcObjects objects with field names that exactly match those in Sales Force
+     * @return one result per record, in the same order
+     * @throws SfdcPartialWriteException if a call failed after other chunks were saved
+     */
+    public List<SaveResult> createAll(String sfdcObjectType, List<Map<String, Object>> sfdcObjects) throws IOException {
+        return createAll(sfdcObjectType, sfdcObjects, 1);
+    }
 
-        return runRequest(xml, "id").item(0).getTextContent();
+    /**
+     * @param parallelism number of chunks of MAX_RECORDS_PER_CALL records sent at the same time
+     * @see #createAll(String, List)
+     */
+    public List<SaveResult> createAll(String sfdcObjectType, List<Map<String, Object>> sfdcObjects, int parallelism)
+            throws IOException {
+        List<SoapWriter.EncodedSObject> encoded = encode(sfdcObjectType, sfdcObjects, false,
+                describeForWrite(sfdcObjectType));
+        try {
+            return runChunked(encoded, parallelism, chunk -> runResultRequest(createRequest(chunk), SAVE_RESULT));
+        } finally {
+            invalidateCache(sfdcObjectType);
+        }
+    }
+
+    /**
+     * Updates the records, MAX_RECORDS_PER_CALL at a time
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param sfdcObjects objects with an "id" key and other field names that exactly match those in Sales Force
+     * @return one result per record, in the same order
+     * @throws SfdcPartialWriteException if a call failed after other chunks were saved
+     */
+    public List<SaveResult> updateAll(String sfdcObjectType, List<Map<String, Object>> sfdcObjects) throws IOException {
+        return updateAll(sfdcObjectType, sfdcObjects, 1);
+    }
+
+    /**
+     * @param parallelism number of chunks of MAX_RECORDS_PER_CALL records sent at the same time
+     * @see #updateAll(String, List)
+     */
+    public List<SaveResult> updateAll(String sfdcObjectType, List<Map<String, Object>> sfdcObjects, int parallelism)
+            throws IOException {
+        for (Map<String, Object> sfdcObject : sfdcObjects) {
+            checkHasId(sfdcObject);
+        }
+        List<SoapWriter.EncodedSObject> encoded = encode(sfdcObjectType, sfdcObjects, true,
+                describeForWrite(sfdcObjectType));
+        try {
+            return runChunked(encoded, parallelism, chunk -> runResultRequest(updateRequest(chunk), SAVE_RESULT));
+        } finally {
+            invalidateCache(sfdcObjectType);
+        }
+    }
+
+    /**
+     * Inserts or updates the records, MAX_RECORDS_PER_CALL at a time
+     * @param externalIdFieldName Used to identify the primary key field for the object, can be any field marked unique for the Salesforce Object Type
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param sfdcObjects objects with field names that exactly match those in Sales Force
+     * @return one result per record, in the same order
+     * @throws SfdcPartialWriteException if a call failed after other chunks were saved
+     */
+    public List<UpsertResult> upsertAll(String externalIdFieldName, String sfdcObjectType,
+                                        List<Map<String, Object>> sfdcObjects) throws IOException {
+        return upsertAll(externalIdFieldName, sfdcObjectType, sfdcObjects, 1);
+    }
+
+    /**
+     * @param parallelism number of chunks of MAX_RECORDS_PER_CALL records sent at the same time
+     * @see #upsertAll(String, String, List)
+     */
+    public List<UpsertResult> upsertAll(String externalIdFieldName, String sfdcObjectType,
+                                        List<Map<String, Object>> sfdcObjects, int parallelism) throws IOException {
+        List<SoapWriter.EncodedSObject> encoded = encode(sfdcObjectType, sfdcObjects, false,
+                describeForWrite(sfdcObjectType));
+        try {
+            return runChunked(encoded, parallelism,
+                    chunk -> runResultRequest(upsertRequest(externalIdFieldName, chunk), UPSERT_RESULT));
+        } finally {
+            invalidateCache(sfdcObjectType);
+        }
+    }
+
+    /**
+     * Deletes the records, MAX_RECORDS_PER_CALL at a time
+     * @param ids IDs of the sfdcObjects to be deleted
+     * @return one result per id, in iteration order
+     * @throws SfdcPartialWriteException if a call failed after other chunks were saved
+     */
+    public List<DeleteResult> deleteAll(Collection<String> ids) throws IOException {
+        return deleteAll(ids, 1);
+    }
+
+    /**
+     * @param parallelism number of chunks of MAX_RECORDS_PER_CALL ids sent at the same time
+     * @see #deleteAll(Collection)
+     */
+    public List<DeleteResult> deleteAll(Collection<String> ids, int parallelism) throws IOException {
+        try {
+            return runChunked(new ArrayList<>(ids), parallelism,
+                    chunk -> runResultRequest(deleteRequest(chunk), DELETE_RESULT));
+        } finally {
+            invalidateCacheById(ids);
+        }
     }
 
     /**
+     * Non blocking version of {@link #query(String)}, the call is queued on the transport's dispatcher which caps
+     * the number of requests in flight (see {@link SfdcTransport.Builder#maxRequests(int)})
+     * @param queryString Please escape anything if needed. (Exapmle code: StringEscapeUtils.escapeXml10(fieldValueToEscape)))
+     * @return first batch of rows
+     */
+    public CompletableFuture<List<Map<String, String>>> queryAsync(String queryString) {
+        SoapRequest request = queryRequest("query", "", queryString);
+        return runAsyncRequest(request, (inputStream, headers) -> {
+            List<Map<String, String>> result = new ArrayList<>();
+            SoapResponseParser.readQueryResult(inputStream, result::add, request, headers);
+            return result;
+        });
+    }
+
+    /**
+     * Non blocking version of {@link #update(String, Map)}
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param sfdcObject an object with an "id" key and other field names that exactly match those in Sales Force
+     */
+    public CompletableFuture<SaveResult> updateAsync(String sfdcObjectType, Map<String, Object> sfdcObject) {
+        SoapRequest request;
+        try {
+            checkHasId(sfdcObject);
+            request = updateRequest(encode(sfdcObjectType, Collections.singletonList(sfdcObject), true,
+                    cachedDescribeForWrite(sfdcObjectType)));
+        } catch (IOException e) {
+            CompletableFuture<SaveResult> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        CompletableFuture<SaveResult> result = runAsyncRequest(request,
+                (inputStream, headers) -> SoapResponseParser.readResults(inputStream, SAVE_RESULT, request, headers).get(0));
+        result.whenComplete((saveResult, throwable) -> invalidateCache(sfdcObjectType));
+        return result;
+    }
+
+    /**
+     * Non blocking version of {@link #upsert(String, String, Map)}
+     * @param externalIdFieldName Used to identify the primary key field for the object, can be any field marked unique for the Salesforce Object Type
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param sfdcObject an object with field names that exactly match those in Sales Force
+     */
+    public CompletableFuture<UpsertResult> upsertAsync(String externalIdFieldName, String sfdcObjectType,
+                                                       Map<String, Object> sfdcObject) {
+        SoapRequest request;
+        try {
+            request = upsertRequest(externalIdFieldName, encode(sfdcObjectType, Collections.singletonList(sfdcObject),
+                    false, cachedDescribeForWrite(sfdcObjectType)));
+        } catch (IOException e) {
+            CompletableFuture<UpsertResult> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        CompletableFuture<UpsertResult> result = runAsyncRequest(request,
+                (inputStream, headers) -> SoapResponseParser.readResults(inputStream, UPSERT_RESULT, request, headers).get(0));
+        result.whenComplete((upsertResult, throwable) -> invalidateCache(sfdcObjectType));
+        return result;
+    }
+
+    /**
+     * Non blocking version of {@link #delete(String)}
      * @param id The ID of the sfdcObject to be deleted
      */
-    public boolean delete(String id) throws IOException {
-        String xml = "<n1:delete><n1:ids>"+ id+ "</n1:ids></n1:delete>";
-         return Boolean.parseBoolean(runRequest(xml, "success").item(0).getTextContent());
+    public CompletableFuture<DeleteResult> deleteAsync(String id) {
+        SoapRequest request = deleteRequest(Collections.singletonList(id));
+        CompletableFuture<DeleteResult> result = runAsyncRequest(request,
+                (inputStream, headers) -> SoapResponseParser.readResults(inputStream, DELETE_RESULT, request, headers).get(0));
+        result.whenComplete((deleteResult, throwable) -> invalidateCacheById(Collections.singletonList(id)));
+        return result;
     }
 
     /**
@@ -265,26 +1009,20 @@ public class SfdcClient {
     public String toSfdcFormat(Date date) {
         if (date == null) return null;
 
-        TimeZone timeZone = TimeZone.getTimeZone("UTC");
-        DateFormat dateFormat = new SimpleDateFormat(SFDC_DATE_TIME_FORMAT);
-        dateFormat.setTimeZone(timeZone);
-
-        return dateFormat.format(date);
+        return SFDC_DATE_TIME.format(date.toInstant());
     }
 
     /**
-     * @param date in "yyyy-MM-dd'T'HH:mm:ssZZZ" format
+     * @param date in "yyyy-MM-dd'T'HH:mm:ssZZZ" format, or as Salesforce returns dateTimes (2018-05-01T10:15:30.000Z)
      * @see <a href="https://developer.salesforce.com/docs/atlas.en-us.soql_sosl.meta/soql_sosl/sforce_api_calls_soql_select_dateformats.htm">https://developer.salesforce.com/docs/atlas.en-us.soql_sosl.meta/soql_sosl/sforce_api_calls_soql_select_dateformats.htm</a>
      * @throws IOException if there was an issue parsing the date string provided
      */
     public static Date fromSfdcFormat(String date) throws IOException {
         if (date == null) return null;
 
-        DateFormat dateFormat = new SimpleDateFormat(SFDC_DATE_TIME_FORMAT);
-
         try {
-            return dateFormat.parse(date);
-        } catch (ParseException e) {
+            return Date.from(SFDC_DATE_TIME_PARSER.parse(date, Instant::from));
+        } catch (DateTimeException e) {
             throw new IOException("Could not parse \"" +date+ "\" using the following format: " + SFDC_DATE_TIME_FORMAT);
         }
     }
@@ -295,19 +1033,17 @@ public class SfdcClient {
      */
     protected NodeList runRequest(String request, String resultTagName)
             throws IOException {
-        if (sessionId == null) {
-            login();
-        }
-        String xml = getFullXml(request);
+        SfdcSession session = sessionManager.get();
+        String xml = getFullXml(session, request, "");
         if(logger.isLoggable(Level.FINEST)) {
             logger.finest("Request body: " + xml);
         }
-        String responseBody = doPost(xml);
+        String responseBody = doPost(session, xml);
 
         if (responseBody.contains("INVALID_SESSION")) {
-            // Login, then try again.
-            login();
-            responseBody = doPost(getFullXml(request));
+            // Login (or wait for another thread doing so), then try again.
+            session = sessionManager.refresh(session);
+            responseBody = doPost(session, getFullXml(session, request, ""));
         }
         if(logger.isLoggable(Level.FINER)) {
             logger.finer("Response body: " + responseBody);
@@ -316,18 +1052,422 @@ public class SfdcClient {
         return getNodeList(new ByteArrayInputStream(responseBody.getBytes()), resultTagName, request);
     }
 
-    private String doPost(String xml) throws IOException {
+    /**
+     * Same as {@link #runRequest(String, String)} but hands the raw response stream to the reader instead of
+     * buffering the response and building a DOM out of it.
+     * @param request written straight into the HTTP request body
+     * @param reader reads the response, SOAP faults are expected to be reported as {@link SfdcFaultException}
+     */
+    private <T> T runStreamingRequest(SoapRequest request, ResponseReader<T> reader) throws IOException {
+        RequestGovernor governor = this.requestGovernor;
+        if (governor == null) {
+            return runWithRelogin(request, reader);
+        }
+        for (int attempt = 0; ; attempt++) {
+            RequestGovernor.Permit permit = governor.acquire();
+            try {
+                T result = runWithRelogin(request, reader);
+                permit.release(null);
+                return result;
+            } catch (IOException | RuntimeException e) {
+                permit.release(e);
+                if (!governor.shouldRetry(e, attempt)) {
+                    throw e;
+                }
+                // Retryable faults come before any data, same as for an invalid session
+                listener.onRetry(request.getOperation(), attempt + 1, (IOException) e);
+                governor.sleepBeforeRetry(attempt);
+            }
+        }
+    }
+
+    private <T> T runWithRelogin(SoapRequest request, ResponseReader<T> reader) throws IOException {
+        SfdcSession session = sessionManager.get();
+        try {
+            return doPost(session, request, reader);
+        } catch (SfdcFaultException e) {
+            if (!e.isInvalidSession()) {
+                throw e;
+            }
+            // Faults come before any data, so nothing was handed to the reader yet. Login, then try again.
+            SfdcListener listener = this.listener;
+            listener.onRelogin(request.getOperation());
+            SfdcSession renewed = sessionManager.refresh(session);
+            listener.onRetry(request.getOperation(), 1, e);
+            return doPost(renewed, request, reader);
+        }
+    }
+
+    private <T> List<T> runResultRequest(SoapRequest request, SoapResponseParser.ResultFactory<T> factory) throws IOException {
+        return runStreamingRequest(request, (inputStream, headers) -> SoapResponseParser.readResults(inputStream, factory, request, headers));
+    }
+
+    /**
+     * Splits items into chunks of MAX_RECORDS_PER_CALL and runs up to parallelism chunks at the same time. After a
+     * failure no further chunks are sent, but chunks already in flight are waited for.
+     * @return results of all chunks, in the order of the items
+     * @throws SfdcPartialWriteException if a chunk failed after others were saved, the failure itself if none were
+     */
+    private <I, T extends SaveResult> List<T> runChunked(List<I> items, int parallelism, ChunkCall<I, T> call)
+            throws IOException {
+        List<List<I>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += MAX_RECORDS_PER_CALL) {
+            chunks.add(items.subList(from, Math.min(items.size(), from + MAX_RECORDS_PER_CALL)));
+        }
+        List<List<T>> chunkResults = new ArrayList<>(Collections.nCopies(chunks.size(), null));
+        IOException failure = null;
+        if (parallelism <= 1 || chunks.size() <= 1) {
+            for (int index = 0; index < chunks.size() && failure == null; index++) {
+                try {
+                    chunkResults.set(index, call.run(chunks.get(index)));
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        } else {
+            AtomicInteger nextChunk = new AtomicInteger();
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int worker = 0; worker < Math.min(parallelism, chunks.size()); worker++) {
+                workers.add(executor().submit(() -> {
+                    try {
+                        for (int index = nextChunk.getAndIncrement(); index < chunks.size();
+                             index = nextChunk.getAndIncrement()) {
+                            chunkResults.set(index, call.run(chunks.get(index)));
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // Stop handing out the remaining chunks, the other workers finish the ones they sent
+                        nextChunk.set(chunks.size());
+                        throw e;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> worker : workers) {
+                try {
+                    worker.get();
+                } catch (InterruptedException e) {
+                    workers.forEach(each -> each.cancel(true));
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for Salesforce", e);
+                } catch (ExecutionException e) {
+                    IOException error = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException("Call to Salesforce failed " + e.getCause().getMessage(), e.getCause());
+                    if (failure == null) {
+                        failure = error;
+                    } else {
+                        failure.addSuppressed(error);
+                    }
+                }
+            }
+        }
+
+        List<T> results = new ArrayList<>(items.size());
+        boolean saved = false;
+        for (int index = 0; index < chunks.size(); index++) {
+            List<T> chunkResult = chunkResults.get(index);
+            if (chunkResult == null) {
+                results.addAll(Collections.nCopies(chunks.get(index).size(), null));
+            } else {
+                results.addAll(chunkResult);
+                saved = true;
+            }
+        }
+        if (failure == null) {
+            return results;
+        }
+        // Chunks already saved are not rolled back, so their results must reach the caller
+        throw saved ? new SfdcPartialWriteException(results, failure) : failure;
+    }
+
+    @FunctionalInterface
+    private interface ChunkCall<I, T> {
+        List<T> run(List<I> chunk) throws IOException;
+    }
+
+    private <T> T doPost(SfdcSession session, SoapRequest request, ResponseReader<T> reader) throws IOException {
+        SfdcListener listener = this.listener;
+        if (listener == SfdcListener.NONE) {
+            try (Response response = transport.getHttpClient().newCall(buildPost(session, request, null)).execute()) {
+                checkAvailable(response, request);
+                return reader.read(response.body().byteStream(), null);
+            }
+        }
+        CallRecorder recorder = new CallRecorder(listener, request.getOperation());
+        try (Response response = transport.getHttpClient().newCall(buildPost(session, request, recorder)).execute()) {
+            checkAvailable(response, request);
+            T result = reader.read(recorder.responseStream(response.body().byteStream()), recorder);
+            recorder.finished(null);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            recorder.finished(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #runStreamingRequest(SoapRequest, ResponseReader)}, the reader runs on
+     * the transport's dispatcher thread. Cancelling the returned future cancels the HTTP call.
+     */
+    private <T> CompletableFuture<T> runAsyncRequest(SoapRequest request, ResponseReader<T> reader) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        RequestGovernor governor = this.requestGovernor;
+        if (governor == null) {
+            enqueueWithSession(request, reader, result);
+        } else {
+            runGoverned(governor, request, reader, 0, result);
+        }
+        return result;
+    }
+
+    private <T> void enqueueWithSession(SoapRequest request, ResponseReader<T> reader, CompletableFuture<T> result) {
+        sessionManager.getAsync().whenComplete((session, loginFailure) -> {
+            if (loginFailure != null) {
+                result.completeExceptionally(loginFailure);
+            } else {
+                enqueue(session, request, reader, true, result);
+            }
+        });
+    }
+
+    /**
+     * Waits for a permit without holding a thread, the call is enqueued by whichever thread hands out the permit
+     */
+    private <T> void runGoverned(RequestGovernor governor, SoapRequest request, ResponseReader<T> reader, int attempt,
+                                 CompletableFuture<T> result) {
+        if (result.isDone()) {
+            return;
+        }
+        CompletableFuture<RequestGovernor.Permit> permitFuture = governor.acquireAsync();
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                permitFuture.cancel(false);
+            }
+        });
+        permitFuture.thenAccept(permit -> {
+            if (result.isDone()) {
+                permit.abandon();
+            } else {
+                runPermitted(governor, permit, request, reader, attempt, result);
+            }
+        });
+    }
+
+    private <T> void runPermitted(RequestGovernor governor, RequestGovernor.Permit permit, SoapRequest request,
+                                  ResponseReader<T> reader, int attempt, CompletableFuture<T> result) {
+        CompletableFuture<T> call = new CompletableFuture<>();
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                call.cancel(false);
+            }
+        });
+        call.whenComplete((value, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            permit.release(cause);
+            if (cause == null) {
+                result.complete(value);
+            } else if (governor.shouldRetry(cause, attempt) && !result.isDone()) {
+                listener.onRetry(request.getOperation(), attempt + 1, (IOException) cause);
+                governor.afterBackoff(attempt, () -> runGoverned(governor, request, reader, attempt + 1, result));
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+        enqueueWithSession(request, reader, call);
+    }
+
+    private <T> void enqueue(SfdcSession session, SoapRequest request, ResponseReader<T> reader,
+                             boolean retryOnInvalidSession, CompletableFuture<T> result) {
+        if (result.isDone()) {
+            return;
+        }
+        SfdcListener listener = this.listener;
+        CallRecorder recorder = listener == SfdcListener.NONE ? null : new CallRecorder(listener, request.getOperation());
+        Call call = transport.getHttpClient().newCall(buildPost(session, request, recorder));
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (recorder != null) {
+                    recorder.finished(e);
+                }
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response closeable = response) {
+                    checkAvailable(closeable, request);
+                    InputStream inputStream = closeable.body().byteStream();
+                    T value = recorder == null
+                            ? reader.read(inputStream, null)
+                            : reader.read(recorder.responseStream(inputStream), recorder);
+                    if (recorder != null) {
+                        recorder.finished(null);
+                    }
+                    result.complete(value);
+                } catch (SfdcFaultException e) {
+                    if (recorder != null) {
+                        recorder.finished(e);
+                    }
+                    if (retryOnInvalidSession && e.isInvalidSession()) {
+                        listener.onRelogin(request.getOperation());
+                        sessionManager.refreshAsync(session).whenComplete((renewed, loginFailure) -> {
+                            if (loginFailure != null) {
+                                result.completeExceptionally(loginFailure);
+                            } else {
+                                listener.onRetry(request.getOperation(), 1, e);
+                                enqueue(renewed, request, reader, false, result);
+                            }
+                        });
+                    } else {
+                        result.completeExceptionally(e);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    if (recorder != null) {
+                        recorder.finished(e);
+                    }
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Salesforce answers faults with HTTP 500 and a SOAP body, but maintenance and overload pages come as a 503
+     * that the SOAP parser would only report as unparsable
+     */
+    private static void checkAvailable(Response response, SoapRequest request) throws SfdcServerUnavailableException {
+        if (response.code() == 503) {
+            throw new SfdcServerUnavailableException("HTTP 503 " + response.message(), String.valueOf(request));
+        }
+    }
+
+    /**
+     * @param recorder measures the call, null when nobody listens
+     */
+    private Request buildPost(SfdcSession session, SoapRequest request, CallRecorder recorder) {
+        SoapRequestBody body = recorder == null
+                ? new SoapRequestBody(session.getSessionId(), request)
+                : recorder.requestBody(session.getSessionId(), request);
+        if(logger.isLoggable(Level.FINEST)) {
+            logger.finest("Request body: " + body);
+        }
+        return new Request.Builder()
+                .url(session.getServerUrl())
+                .addHeader("SOAPAction", "login")
+                .post(body)
+                .build();
+    }
+
+    private static SoapRequest queryRequest(String operation, String headers, String queryString) {
+        return new SoapRequest(operation, headers, writer -> writer
+                .raw("<n1:").raw(operation).raw(QUERY_STRING_START)
+                .raw(queryString)
+                .raw(QUERY_STRING_END).raw(operation).raw(">"));
+    }
+
+    private static SoapRequest queryMoreRequest(String queryLocator, QueryOptions options) {
+        return new SoapRequest("queryMore", options.toHeaderXml(), writer -> writer
+                .raw(QUERY_MORE_START).raw(queryLocator).raw(QUERY_MORE_END));
+    }
+
+    /**
+     * Checks and formats all records before the first one is sent, see
+     * {@link SoapWriter#encode(String, Object, Map, SObjectDescribe)}
+     * @param withId true to write the "id" key of each record as its n2:id, see {@link #checkHasId(Map)}
+     */
+    private static List<SoapWriter.EncodedSObject> encode(String sfdcObjectType, List<Map<String, Object>> sfdcObjects,
+                                                          boolean withId, SObjectDescribe describe) throws IOException {
+        List<SoapWriter.EncodedSObject> encoded = new ArrayList<>(sfdcObjects.size());
+        for (Map<String, Object> sfdcObject : sfdcObjects) {
+            encoded.add(SoapWriter.encode(sfdcObjectType, withId ? sfdcObject.get("id") : null, sfdcObject, describe));
+        }
+        return encoded;
+    }
+
+    private static SoapRequest createRequest(List<SoapWriter.EncodedSObject> sObjects) {
+        return new SoapRequest("create", writer -> {
+            writer.raw(CREATE_START);
+            for (SoapWriter.EncodedSObject sObject : sObjects) {
+                writer.sObject(sObject);
+            }
+            writer.raw(CREATE_END);
+        });
+    }
+
+    /**
+     * @param sfdcObjects each one must have an "id" key, see {@link #checkHasId(Map)}
+     */
+    static SoapRequest updateRequest(String sfdcObjectType, List<Map<String, Object>> sfdcObjects) throws IOException {
+        return updateRequest(encode(sfdcObjectType, sfdcObjects, true, null));
+    }
+
+    private static SoapRequest updateRequest(List<SoapWriter.EncodedSObject> sObjects) {
+        return new SoapRequest("update", writer -> {
+            writer.raw(UPDATE_START);
+            for (SoapWriter.EncodedSObject sObject : sObjects) {
+                writer.sObject(sObject);
+            }
+            writer.raw(UPDATE_END);
+        });
+    }
+
+    private static SoapRequest upsertRequest(String externalIdFieldName, List<SoapWriter.EncodedSObject> sObjects) {
+        return new SoapRequest("upsert", writer -> {
+            writer.raw(UPSERT_START).raw(externalIdFieldName).raw(UPSERT_EXTERNAL_ID_END);
+            for (SoapWriter.EncodedSObject sObject : sObjects) {
+                writer.sObject(sObject);
+            }
+            writer.raw(UPSERT_END);
+        });
+    }
+
+    private static SoapRequest deleteRequest(List<String> ids) {
+        return new SoapRequest("delete", writer -> {
+            writer.raw(DELETE_START);
+            for (String id : ids) {
+                writer.raw(IDS_START).raw(id).raw(IDS_END);
+            }
+            writer.raw(DELETE_END);
+        });
+    }
+
+    private void invalidateCache(String sfdcObjectType) {
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            cache.invalidate(sfdcObjectType);
+        }
+    }
+
+    private void invalidateCacheById(Collection<String> ids) {
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            ids.forEach(cache::invalidateById);
+        }
+    }
+
+    private static void checkHasId(Map<String, Object> sfdcObject) throws IOException {
+        if (!sfdcObject.containsKey("id")) {
+            throw new IOException("The Salesforce Object does not have an \"id\" key. Please add one and submit it again");
+        }
+    }
+
+    private String doPost(SfdcSession session, String xml) throws IOException {
         RequestBody body = RequestBody.create(MEDIA_TYPE, xml);
 
         Request post = new Request.Builder()
-                .url(serverUrl)
+                .url(session.getServerUrl())
                 .addHeader("SOAPAction", "login")
                 .post(body)
                 .build();
 
-        Response response = new OkHttpClient().newCall(post).execute();
-
-        return response.body().string();
+        try (Response response = transport.getHttpClient().newCall(post).execute()) {
+            return response.body().string();
+        }
     }
 
     /**
@@ -335,6 +1475,20 @@ public class SfdcClient {
      * @return full XML request to send to Salesforce
      */
     protected String getFullXml(String request) {
+        return getFullXml(request, "");
+    }
+
+    /**
+     * @param request partial request XML (just the inner part)
+     * @param headers extra SOAP header XML, next to the session header
+     * @return full XML request to send to Salesforce
+     */
+    protected String getFullXml(String request, String headers) {
+        return getFullXml(sessionManager.current(), request, headers);
+    }
+
+    private String getFullXml(SfdcSession session, String request, String headers) {
+        String sessionId = session == null ? null : session.getSessionId();
         return "<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n"
                     + "<env:Envelope xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\"\n"
                     + "    xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
@@ -347,6 +1501,7 @@ public class SfdcClient {
                     + "    <n1:SessionHeader>\n"
                     + "      <n1:sessionId>" +sessionId+ "</n1:sessionId>\n"
                     + "    </n1:SessionHeader>\n"
+                    +       headers
                     + "  </env:Header>\n"
 
                     + "  <env:Body>\n"
@@ -359,7 +1514,7 @@ public class SfdcClient {
         return eElement.getElementsByTagName(tagName).item(0).getTextContent();
     }
 
-    private NodeList getNodeList(InputStream inputStream, String tagToGet, String request) throws IOException {
+    NodeList getNodeList(InputStream inputStream, String tagToGet, String request) throws IOException {
         DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
         Document doc;
         try {
@@ -373,27 +1528,22 @@ public class SfdcClient {
 
         NodeList faultStrings = doc.getElementsByTagName("faultstring");
         if (faultStrings.getLength() > 0) {
-            throw new IOException("Call to Salesforce failed with message: " + faultStrings.item(0).getTextContent() + " with request: " + request);
+            NodeList faultCodes = doc.getElementsByTagName("faultcode");
+            String faultCode = faultCodes.getLength() > 0
+                    ? SoapResponseParser.stripPrefix(faultCodes.item(0).getTextContent().trim())
+                    : null;
+            throw SfdcFaultException.of(faultCode, faultStrings.item(0).getTextContent(), request);
         }
 
         return doc.getElementsByTagName(tagToGet);
     }
 
-    private StringBuilder makeObjectFieldXml(Map<String, Object> map) {
-        StringBuilder objectFields = new StringBuilder();
-        map.forEach((key, value) -> {
-            Class<?> valueClass = value.getClass();
-            if (String.class == valueClass || ClassUtils.isPrimitiveOrWrapper(valueClass)) {
-                objectFields.append("<");
-                objectFields.append(key);
-                objectFields.append(">");
-                objectFields.append(StringEscapeUtils.escapeXml10(value.toString()));
-                objectFields.append("</");
-                objectFields.append(key);
-                objectFields.append(">");
-            }
-        });
-        return objectFields;
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        /**
+         * @param headers receives values of the response's SOAP header, null when nobody listens
+         */
+        T read(InputStream inputStream, SoapResponseParser.HeaderListener headers) throws IOException;
     }
 
 }
@@ -0,0 +1,42 @@
+package com.dt209.sfdcclient;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Error reported by Salesforce for a single record of a create/update/upsert/delete call
+ */
+public class SfdcError {
+    private final String statusCode;
+    private final String message;
+    private final List<String> fields;
+
+    public SfdcError(String statusCode, String message, List<String> fields) {
+        this.statusCode = statusCode;
+        this.message = message;
+        this.fields = Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * @return such as REQUIRED_FIELD_MISSING or DUPLICATE_VALUE
+     */
+    public String getStatusCode() {
+        return statusCode;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return fields that caused the error, may be empty
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        return statusCode + ": " + message + (fields.isEmpty() ? "" : " " + fields);
+    }
+}
@@ -0,0 +1,71 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+
+/**
+ * Thrown when Salesforce answers a call with a SOAP fault. Faults that callers may want to react to have their own
+ * subclass, see {@link #of(String, String, String)}.
+ */
+public class SfdcFaultException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String faultCode;
+    private final String faultString;
+
+    public SfdcFaultException(String faultCode, String faultString, String request) {
+        super("Call to Salesforce failed with message: " + faultString + " with request: " + request);
+        this.faultCode = faultCode;
+        this.faultString = faultString;
+    }
+
+    /**
+     * @param faultCode without namespace prefix
+     * @return the subclass matching the fault code, a plain SfdcFaultException for all other codes
+     */
+    static SfdcFaultException of(String faultCode, String faultString, String request) {
+        if (faultCode != null) {
+            switch (faultCode) {
+                case SfdcRequestLimitException.FAULT_CODE:
+                    return new SfdcRequestLimitException(faultString, request);
+                case SfdcServerUnavailableException.FAULT_CODE:
+                    return new SfdcServerUnavailableException(faultString, request);
+                default:
+                    break;
+            }
+        }
+        return new SfdcFaultException(faultCode, faultString, request);
+    }
+
+    /**
+     * @return fault code without its namespace prefix, such as INVALID_SESSION_ID or INVALID_FIELD
+     */
+    public String getFaultCode() {
+        return faultCode;
+    }
+
+    public String getFaultString() {
+        return faultString;
+    }
+
+    /**
+     * @return true if the session expired or was invalidated and a new login is needed
+     */
+    public boolean isInvalidSession() {
+        return (faultCode != null && faultCode.contains("INVALID_SESSION"))
+                || (faultString != null && faultString.contains("INVALID_SESSION"));
+    }
+
+    /**
+     * @return true if the same call may succeed when sent again a little later
+     */
+    public boolean isRetryable() {
+        return false;
+    }
+
+    /**
+     * @return true if Salesforce rejected the call because the org is overloaded, callers should slow down
+     */
+    public boolean isOverload() {
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+
+/**
+ * Receives measurements of the SOAP calls made by a {@link SfdcClient}, see {@link SfdcClient#setListener(SfdcListener)}.
+ * All methods do nothing by default. They are called on the thread that made the call (or the transport's
+ * dispatcher thread for asynchronous calls), so they should return quickly and be thread safe.
+ * {@link SfdcMetrics} is a ready made implementation.
+ */
+public interface SfdcListener {
+    /**
+     * Does nothing, the client skips all measuring when it is set
+     */
+    SfdcListener NONE = new SfdcListener() {
+    };
+
+    /**
+     * Called once per HTTP call to Salesforce (including logins), after the response was read or the call failed
+     */
+    default void onCall(SfdcCallEvent event) {
+    }
+
+    /**
+     * Called when Salesforce rejected the session of a call and the client logs in again
+     * @param operation the call that was rejected, such as query or update
+     */
+    default void onRelogin(String operation) {
+    }
+
+    /**
+     * Called before a failed call is sent again
+     * @param operation such as query or update
+     * @param attempt 1 for the first retry
+     * @param cause why the previous attempt failed
+     */
+    default void onRetry(String operation, int attempt, IOException cause) {
+    }
+
+    /**
+     * Called with each limit Salesforce reports in the LimitInfoHeader of a response
+     */
+    default void onApiLimit(ApiLimit apiLimit) {
+    }
+}
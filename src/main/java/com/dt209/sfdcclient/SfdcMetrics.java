@@ -0,0 +1,178 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener that keeps per-operation latency histograms, byte counts, fault/re-login/retry counts and the latest
+ * API limits reported by Salesforce. Thread safe, one instance can be shared by several clients.
+ * <pre>
+ * SfdcMetrics metrics = new SfdcMetrics();
+ * sfdcClient.setListener(metrics);
+ * ...
+ * metrics.getOperation("query").getLatency().getPercentileNanos(99);
+ * </pre>
+ */
+public class SfdcMetrics implements SfdcListener {
+    /**
+     * Key of {@link #getFaultCounts()} for failures that were not SOAP faults, such as timeouts
+     */
+    public static final String NOT_A_FAULT = "IO_ERROR";
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> faults = new ConcurrentHashMap<>();
+    private final Map<String, ApiLimit> apiLimits = new ConcurrentHashMap<>();
+    private final LongAdder relogins = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    @Override
+    public void onCall(SfdcCallEvent event) {
+        operations.computeIfAbsent(event.getOperation(), name -> new Operation()).record(event);
+        if (!event.isSuccess()) {
+            String faultCode = event.getFaultCode();
+            faults.computeIfAbsent(faultCode == null ? NOT_A_FAULT : faultCode, code -> new LongAdder()).increment();
+        }
+    }
+
+    @Override
+    public void onRelogin(String operation) {
+        relogins.increment();
+    }
+
+    @Override
+    public void onRetry(String operation, int attempt, IOException cause) {
+        retries.increment();
+    }
+
+    @Override
+    public void onApiLimit(ApiLimit apiLimit) {
+        apiLimits.put(apiLimit.getType(), apiLimit);
+    }
+
+    /**
+     * @param operation such as login, query, queryMore, update, upsert or delete
+     * @return measurements of the operation, empty if it was not called yet
+     */
+    public Operation getOperation(String operation) {
+        Operation measured = operations.get(operation);
+        return measured == null ? new Operation() : measured;
+    }
+
+    /**
+     * @return measurements of all operations called so far, by operation name
+     */
+    public Map<String, Operation> getOperations() {
+        return Collections.unmodifiableMap(new TreeMap<>(operations));
+    }
+
+    /**
+     * @return number of failed calls by SOAP fault code, failures that were not faults are counted under {@link #NOT_A_FAULT}
+     */
+    public Map<String, Long> getFaultCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        faults.forEach((code, count) -> counts.put(code, count.sum()));
+        return counts;
+    }
+
+    /**
+     * @return number of failed calls, SOAP faults or otherwise
+     */
+    public long getFaultCount() {
+        return faults.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public long getReloginCount() {
+        return relogins.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * @param type such as "API REQUESTS"
+     * @return latest usage reported for the limit, null if Salesforce did not report it yet
+     */
+    public ApiLimit getApiLimit(String type) {
+        return apiLimits.get(type);
+    }
+
+    public Map<String, ApiLimit> getApiLimits() {
+        return Collections.unmodifiableMap(new TreeMap<>(apiLimits));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder("SfdcMetrics{");
+        getOperations().forEach((name, operation) -> summary.append(name).append(": ").append(operation).append(", "));
+        return summary.append("faults=").append(getFaultCounts())
+                .append(", relogins=").append(getReloginCount())
+                .append(", retries=").append(getRetryCount())
+                .append(", apiLimits=").append(getApiLimits().values())
+                .append('}').toString();
+    }
+
+    /**
+     * Measurements of one operation
+     */
+    public static class Operation {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram network = new LatencyHistogram();
+        private final LatencyHistogram parse = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+
+        private void record(SfdcCallEvent event) {
+            latency.record(event.getTotalNanos());
+            network.record(event.getNetworkNanos());
+            parse.record(event.getParseNanos());
+            if (!event.isSuccess()) {
+                errors.increment();
+            }
+            requestBytes.add(Math.max(0, event.getRequestBytes()));
+            responseBytes.add(event.getResponseBytes());
+        }
+
+        public long getCallCount() {
+            return latency.getCount();
+        }
+
+        public long getErrorCount() {
+            return errors.sum();
+        }
+
+        /**
+         * @return time of whole calls, network and parsing
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public LatencyHistogram getNetwork() {
+            return network;
+        }
+
+        public LatencyHistogram getParse() {
+            return parse;
+        }
+
+        public long getRequestBytes() {
+            return requestBytes.sum();
+        }
+
+        public long getResponseBytes() {
+            return responseBytes.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "{" + latency + ", errors=" + getErrorCount() + ", requestBytes=" + getRequestBytes()
+                    + ", responseBytes=" + getResponseBytes() + "}";
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by the createAll/updateAll/upsertAll/deleteAll calls when a chunk failed after other chunks were already
+ * saved. Saved chunks are not rolled back, {@link #getResults()} tells which records they held.
+ */
+public class SfdcPartialWriteException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<? extends SaveResult> results;
+
+    public SfdcPartialWriteException(List<? extends SaveResult> results, IOException cause) {
+        super("Salesforce saved only some of the records, a call failed with: " + cause.getMessage(), cause);
+        this.results = Collections.unmodifiableList(results);
+    }
+
+    /**
+     * @return one entry per record in the order sent, null for records whose chunk failed or was never sent.
+     * Elements are of the call's result type, such as UpsertResult for upsertAll.
+     */
+    public List<? extends SaveResult> getResults() {
+        return results;
+    }
+}
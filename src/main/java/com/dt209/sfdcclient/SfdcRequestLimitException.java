@@ -0,0 +1,33 @@
+package com.dt209.sfdcclient;
+
+/**
+ * REQUEST_LIMIT_EXCEEDED fault. Salesforce uses the same code for the org's rolling 24 hour API request limit
+ * (not worth retrying until requests age out) and for the limit on concurrent long running requests (worth
+ * retrying once other requests have finished), they are told apart by the fault string.
+ */
+public class SfdcRequestLimitException extends SfdcFaultException {
+    private static final long serialVersionUID = 1L;
+
+    public static final String FAULT_CODE = "REQUEST_LIMIT_EXCEEDED";
+
+    public SfdcRequestLimitException(String faultString, String request) {
+        super(FAULT_CODE, faultString, request);
+    }
+
+    /**
+     * @return true if too many requests were running at the same time, false if the daily limit was used up
+     */
+    public boolean isConcurrentLimit() {
+        return getFaultString() != null && getFaultString().contains("Concurrent");
+    }
+
+    @Override
+    public boolean isRetryable() {
+        return isConcurrentLimit();
+    }
+
+    @Override
+    public boolean isOverload() {
+        return isConcurrentLimit();
+    }
+}
@@ -0,0 +1,24 @@
+package com.dt209.sfdcclient;
+
+/**
+ * SERVER_UNAVAILABLE fault, or an HTTP 503 without a SOAP body: the instance is overloaded or in maintenance
+ */
+public class SfdcServerUnavailableException extends SfdcFaultException {
+    private static final long serialVersionUID = 1L;
+
+    public static final String FAULT_CODE = "SERVER_UNAVAILABLE";
+
+    public SfdcServerUnavailableException(String faultString, String request) {
+        super(FAULT_CODE, faultString, request);
+    }
+
+    @Override
+    public boolean isRetryable() {
+        return true;
+    }
+
+    @Override
+    public boolean isOverload() {
+        return true;
+    }
+}
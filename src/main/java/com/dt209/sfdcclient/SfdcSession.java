@@ -0,0 +1,57 @@
+package com.dt209.sfdcclient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable result of a login, safe to share between threads
+ */
+public class SfdcSession {
+    /**
+     * Used when the login response does not say how long the session lasts, the Salesforce default
+     */
+    public static final long DEFAULT_SECONDS_VALID = TimeUnit.HOURS.toSeconds(2);
+
+    private final String sessionId;
+    private final String serverUrl;
+    private final long expiresAtMillis;
+
+    /**
+     * @param sessionId Session ID returned by login
+     * @param serverUrl URL to send all other calls to
+     * @param expiresAtMillis Epoch millis after which the session should no longer be used
+     */
+    public SfdcSession(String sessionId, String serverUrl, long expiresAtMillis) {
+        this.sessionId = sessionId;
+        this.serverUrl = serverUrl;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= expiresAtMillis;
+    }
+
+    /**
+     * @return true if the session expires within the given margin
+     */
+    public boolean isExpiring(long marginMillis) {
+        return System.currentTimeMillis() >= expiresAtMillis - marginMillis;
+    }
+
+    @Override
+    public String toString() {
+        // Never log the session ID itself
+        return "SfdcSession{serverUrl=" + serverUrl + ", expiresAtMillis=" + expiresAtMillis + "}";
+    }
+}
@@ -0,0 +1,182 @@
+package com.dt209.sfdcclient;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Long lived HTTP transport used by {@link SfdcClient}. Holds a single {@link OkHttpClient} so that connections
+ * (and their TLS sessions) to the login host and to the instance host are kept alive and reused between calls.
+ * A transport can be shared by several clients, in which case it is up to the caller to {@link #close()} it.
+ */
+public class SfdcTransport implements Closeable {
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    public static final long DEFAULT_KEEP_ALIVE_SECONDS = 300;
+    public static final long DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+    /**
+     * Large queries and DML batches can take a while on the Salesforce side, hence the generous default
+     */
+    public static final long DEFAULT_READ_TIMEOUT_SECONDS = 120;
+    public static final long DEFAULT_WRITE_TIMEOUT_SECONDS = 60;
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 10;
+
+    private final OkHttpClient httpClient;
+
+    /**
+     * Transport with all the defaults above
+     */
+    public SfdcTransport() {
+        this(new Builder());
+    }
+
+    private SfdcTransport(Builder builder) {
+        Dispatcher dispatcher = builder.executorService == null
+                ? new Dispatcher()
+                : new Dispatcher(builder.executorService);
+        dispatcher.setMaxRequests(builder.maxRequests);
+        dispatcher.setMaxRequestsPerHost(builder.maxRequestsPerHost);
+
+        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(builder.maxIdleConnections, builder.keepAliveSeconds, TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .connectTimeout(builder.connectTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(builder.readTimeoutSeconds, TimeUnit.SECONDS)
+                .writeTimeout(builder.writeTimeoutSeconds, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true);
+        if (builder.http2) {
+            // HTTP/2 is negotiated through ALPN, falls back to HTTP/1.1 where the server or JVM does not support it
+            clientBuilder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        } else {
+            clientBuilder.protocols(Arrays.asList(Protocol.HTTP_1_1));
+        }
+        httpClient = clientBuilder.build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the shared client, do not shut it down directly, use {@link #close()} instead
+     */
+    public OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Releases the pooled connections and the dispatcher threads. The transport can not be used afterwards.
+     */
+    @Override
+    public void close() {
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+    public static class Builder {
+        private int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+        private long keepAliveSeconds = DEFAULT_KEEP_ALIVE_SECONDS;
+        private long connectTimeoutSeconds = DEFAULT_CONNECT_TIMEOUT_SECONDS;
+        private long readTimeoutSeconds = DEFAULT_READ_TIMEOUT_SECONDS;
+        private long writeTimeoutSeconds = DEFAULT_WRITE_TIMEOUT_SECONDS;
+        private int maxRequests = DEFAULT_MAX_REQUESTS;
+        private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+        private boolean http2 = true;
+        private ExecutorService executorService;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxIdleConnections Number of idle connections kept in the pool
+         */
+        public Builder maxIdleConnections(int maxIdleConnections) {
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        /**
+         * @param keepAliveSeconds Idle connections are evicted from the pool after this many seconds
+         */
+        public Builder keepAliveSeconds(long keepAliveSeconds) {
+            this.keepAliveSeconds = keepAliveSeconds;
+            return this;
+        }
+
+        public Builder connectTimeoutSeconds(long connectTimeoutSeconds) {
+            this.connectTimeoutSeconds = connectTimeoutSeconds;
+            return this;
+        }
+
+        public Builder readTimeoutSeconds(long readTimeoutSeconds) {
+            this.readTimeoutSeconds = readTimeoutSeconds;
+            return this;
+        }
+
+        public Builder writeTimeoutSeconds(long writeTimeoutSeconds) {
+            this.writeTimeoutSeconds = writeTimeoutSeconds;
+            return this;
+        }
+
+        /**
+         * @param maxRequests Maximum number of asynchronous requests in flight, further requests are queued
+         */
+        public Builder maxRequests(int maxRequests) {
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        /**
+         * @param maxRequestsPerHost Maximum number of asynchronous requests in flight against a single host
+         */
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * @param http2 false to force HTTP/1.1 (for example when going through a proxy that mangles HTTP/2)
+         */
+        public Builder http2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        /**
+         * @param executorService Runs the asynchronous calls, shut down by {@link SfdcTransport#close()}
+         */
+        public Builder executorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * Runs asynchronous calls on virtual threads, one per call, instead of the default platform thread pool.
+         * The number of calls in flight is still capped by {@link #maxRequests(int)} and {@link #maxRequestsPerHost(int)}.
+         * @throws UnsupportedOperationException when running on a JVM older than Java 21
+         */
+        public Builder virtualThreads() {
+            try {
+                this.executorService = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                throw new UnsupportedOperationException("Virtual threads need Java 21 or newer, running on "
+                        + System.getProperty("java.version"), e);
+            }
+            return this;
+        }
+
+        public SfdcTransport build() {
+            return new SfdcTransport(this);
+        }
+    }
+}
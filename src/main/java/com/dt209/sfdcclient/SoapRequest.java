@@ -0,0 +1,73 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+
+import okio.Buffer;
+
+/**
+ * The operation specific part of a SOAP call (what goes into env:Body plus any extra headers). The body is
+ * written on demand, so the same request can be sent again after a re-login or a connection failure.
+ */
+final class SoapRequest {
+    private final String operation;
+    private final String headers;
+    private final BodyWriter body;
+
+    /**
+     * @param operation name of the SOAP operation, such as query or update
+     * @param body writes the operation element
+     */
+    SoapRequest(String operation, BodyWriter body) {
+        this(operation, "", body);
+    }
+
+    /**
+     * @param operation name of the SOAP operation, such as query or update
+     * @param headers extra SOAP header XML, next to the session header
+     * @param body writes the operation element
+     */
+    SoapRequest(String operation, String headers, BodyWriter body) {
+        this.operation = operation;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * Request that is already available as partial XML
+     */
+    static SoapRequest ofXml(String operation, String xml) {
+        return new SoapRequest(operation, writer -> writer.raw(xml));
+    }
+
+    String getOperation() {
+        return operation;
+    }
+
+    String getHeaders() {
+        return headers;
+    }
+
+    void writeBody(SoapWriter writer) throws IOException {
+        body.write(writer);
+    }
+
+    /**
+     * @return the partial request XML, rendered on each call so only use it for logging and error messages.
+     * A body that can not be written is described instead, this is used while reporting other errors.
+     */
+    @Override
+    public String toString() {
+        Buffer buffer = new Buffer();
+        try {
+            writeBody(new SoapWriter(buffer));
+        } catch (IOException | RuntimeException e) {
+            return "<" + operation + " request that could not be rendered: " + e.getMessage() + ">";
+        }
+        return buffer.readUtf8();
+    }
+
+    @FunctionalInterface
+    interface BodyWriter {
+        void write(SoapWriter writer) throws IOException;
+    }
+}
@@ -0,0 +1,119 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.ForwardingSink;
+import okio.Okio;
+
+/**
+ * Streams the full SOAP envelope of a request into the HTTP sink. The envelope around the session ID and the
+ * operation is pre-encoded as UTF-8, only the session ID and the operation are written per call.
+ */
+final class SoapRequestBody extends RequestBody {
+    static final MediaType MEDIA_TYPE = MediaType.parse("text/xml; charset=UTF-8");
+
+    private static final ByteString ENVELOPE_START = ByteString.encodeUtf8("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n"
+            + "<env:Envelope xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\"\n"
+            + "    xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+            + "    xmlns:env=\"http://schemas.xmlsoap.org/soap/envelope/\""
+            + "    xmlns:n1=\"urn:partner.soap.sforce.com\""
+            + "    xmlns:n2=\"urn:sobject.partner.soap.sforce.com\""
+            + ">\n"
+            + "  <env:Header>\n"
+            + "    <n1:SessionHeader>\n"
+            + "      <n1:sessionId>");
+    private static final ByteString SESSION_END = ByteString.encodeUtf8("</n1:sessionId>\n"
+            + "    </n1:SessionHeader>\n");
+    private static final ByteString HEADER_END_BODY_START = ByteString.encodeUtf8("  </env:Header>\n"
+            + "  <env:Body>\n");
+    private static final ByteString ENVELOPE_END = ByteString.encodeUtf8("  </env:Body>\n"
+            + "</env:Envelope>");
+
+    private final String sessionId;
+    private final SoapRequest request;
+    private final boolean countBytes;
+    private volatile long bytesWritten = -1;
+
+    SoapRequestBody(String sessionId, SoapRequest request) {
+        this(sessionId, request, false);
+    }
+
+    /**
+     * @param countBytes true to count the bytes written, see {@link #getBytesWritten()}
+     */
+    SoapRequestBody(String sessionId, SoapRequest request, boolean countBytes) {
+        this.sessionId = sessionId;
+        this.request = request;
+        this.countBytes = countBytes;
+    }
+
+    /**
+     * @return size of the body last written, -1 if not counted or not written yet
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return MEDIA_TYPE;
+    }
+
+    /**
+     * @return -1, the length is not known before writing, which sends the body chunked
+     */
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        if (!countBytes) {
+            write(sink);
+            return;
+        }
+        long[] count = new long[1];
+        BufferedSink counting = Okio.buffer(new ForwardingSink(sink) {
+            @Override
+            public void write(Buffer source, long byteCount) throws IOException {
+                super.write(source, byteCount);
+                count[0] += byteCount;
+            }
+        });
+        write(counting);
+        counting.emit();
+        bytesWritten = count[0];
+    }
+
+    private void write(BufferedSink sink) throws IOException {
+        sink.write(ENVELOPE_START);
+        sink.writeUtf8(String.valueOf(sessionId));
+        sink.write(SESSION_END);
+        if (!request.getHeaders().isEmpty()) {
+            sink.writeUtf8(request.getHeaders());
+        }
+        sink.write(HEADER_END_BODY_START);
+        request.writeBody(new SoapWriter(sink));
+        sink.write(ENVELOPE_END);
+    }
+
+    /**
+     * @return the full request XML, for logging
+     */
+    @Override
+    public String toString() {
+        Buffer buffer = new Buffer();
+        try {
+            write(buffer);
+        } catch (IOException | RuntimeException e) {
+            return "Could not render request " + e.getMessage();
+        }
+        return buffer.readUtf8();
+    }
+}
@@ -0,0 +1,682 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Pull parser for Salesforce SOAP responses, reads straight from the response stream without building a DOM so
+ * that memory used per call does not depend on the size of the response.
+ */
+final class SoapResponseParser {
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+    private static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+
+    private SoapResponseParser() {
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Reads a query/queryMore response, passing each record to the handler as soon as it is complete
+     * @param request only used for error messages
+     */
+    static QueryBatch readQueryResult(InputStream inputStream, RecordHandler handler, SoapRequest request)
+            throws IOException {
+        return readQueryResult(inputStream, handler, request, null);
+    }
+
+    /**
+     * @param headers receives values of the response's SOAP header, null to skip them
+     * @see #readQueryResult(InputStream, RecordHandler, SoapRequest)
+     */
+    static QueryBatch readQueryResult(InputStream inputStream, RecordHandler handler, SoapRequest request,
+                                      HeaderListener headers) throws IOException {
+        return readQueryResult(inputStream, new MapRecordSink(handler), request, headers);
+    }
+
+    /**
+     * Reads a query/queryMore response, decoding the fields of each record into typed values as they are parsed
+     * @param describe of the queried sObject type, fields it does not know (such as relationships) stay Strings,
+     *                 null to keep all values as Strings
+     * @param headers receives values of the response's SOAP header, null to skip them
+     */
+    static QueryBatch readQueryResult(InputStream inputStream, SObjectDescribe describe, TypedRecordHandler handler,
+                                      SoapRequest request, HeaderListener headers) throws IOException {
+        return readQueryResult(inputStream, new TypedRecordSink(describe, handler), request, headers);
+    }
+
+    /**
+     * Reads a query/queryMore response, passing the fields of each record to the sink
+     * @param request only used for error messages
+     */
+    static QueryBatch readQueryResult(InputStream inputStream, RecordSink sink, SoapRequest request)
+            throws IOException {
+        return readQueryResult(inputStream, sink, request, null);
+    }
+
+    /**
+     * @param headers receives values of the response's SOAP header, null to skip them
+     * @see #readQueryResult(InputStream, RecordSink, SoapRequest)
+     */
+    static QueryBatch readQueryResult(InputStream inputStream, RecordSink sink, SoapRequest request,
+                                      HeaderListener headers) throws IOException {
+        XMLStreamReader reader = open(inputStream, request);
+        try {
+            moveToBodyContent(reader, request, headers);
+            QueryBatch batch = new QueryBatch();
+            // Positioned on <queryResponse>, its only child is <result>
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 2) {
+                        String name = reader.getLocalName();
+                        if ("records".equals(name)) {
+                            readRecord(reader, sink);
+                            depth--;
+                        } else if ("done".equals(name)) {
+                            batch.done = Boolean.parseBoolean(readText(reader));
+                            depth--;
+                        } else if ("queryLocator".equals(name)) {
+                            String locator = readText(reader);
+                            batch.queryLocator = locator.isEmpty() ? null : locator;
+                            depth--;
+                        } else if ("size".equals(name)) {
+                            batch.size = Integer.parseInt(readText(reader).trim());
+                            depth--;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 0) {
+                        break; // </queryResponse>
+                    }
+                    depth--;
+                }
+            }
+            return batch;
+        } catch (XMLStreamException e) {
+            throw unparsable(e, request);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Reads the result elements of a create/update/upsert/delete response, one per record sent, in order
+     * @param factory turns each parsed result into the type expected by the caller
+     * @param request only used for error messages
+     */
+    static <T> List<T> readResults(InputStream inputStream, ResultFactory<T> factory, SoapRequest request)
+            throws IOException {
+        return readResults(inputStream, factory, request, null);
+    }
+
+    /**
+     * @param headers receives values of the response's SOAP header, null to skip them
+     * @see #readResults(InputStream, ResultFactory, SoapRequest)
+     */
+    static <T> List<T> readResults(InputStream inputStream, ResultFactory<T> factory, SoapRequest request,
+                                   HeaderListener headers) throws IOException {
+        XMLStreamReader reader = open(inputStream, request);
+        try {
+            moveToBodyContent(reader, request, headers);
+            List<T> results = new ArrayList<>();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT && "result".equals(reader.getLocalName())) {
+                    results.add(readResult(reader, factory));
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    break; // end of the response element
+                }
+            }
+            return results;
+        } catch (XMLStreamException e) {
+            throw unparsable(e, request);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static <T> T readResult(XMLStreamReader reader, ResultFactory<T> factory) throws XMLStreamException {
+        String id = null;
+        boolean success = false;
+        boolean created = false;
+        List<SfdcError> errors = Collections.emptyList();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("errors".equals(name)) {
+                    if (errors.isEmpty()) {
+                        errors = new ArrayList<>(1);
+                    }
+                    errors.add(readError(reader));
+                } else {
+                    String text = readText(reader);
+                    if ("id".equals(name)) {
+                        id = text.isEmpty() ? null : text;
+                    } else if ("success".equals(name)) {
+                        success = Boolean.parseBoolean(text);
+                    } else if ("created".equals(name)) {
+                        created = Boolean.parseBoolean(text);
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        return factory.create(id, success, created, errors);
+    }
+
+    private static SfdcError readError(XMLStreamReader reader) throws XMLStreamException {
+        String statusCode = null;
+        String message = null;
+        List<String> fields = new ArrayList<>(1);
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                String text = readText(reader);
+                if ("statusCode".equals(name)) {
+                    statusCode = text;
+                } else if ("message".equals(name)) {
+                    message = text;
+                } else if ("fields".equals(name)) {
+                    fields.add(text);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        return new SfdcError(statusCode, message, fields);
+    }
+
+    @FunctionalInterface
+    interface ResultFactory<T> {
+        T create(String id, boolean success, boolean created, List<SfdcError> errors);
+    }
+
+    /**
+     * Positioned on a START_ELEMENT of records, reads fields until the matching END_ELEMENT.
+     * Nested elements (relationship fields) get their text concatenated, same as the DOM based parsing did.
+     */
+    private static void readRecord(XMLStreamReader reader, RecordSink sink) throws XMLStreamException, IOException {
+        sink.startRecord();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String key = reader.getLocalName();
+                sink.field(key, readText(reader));
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        sink.endRecord();
+    }
+
+    /**
+     * Receives the fields of query records as they are parsed
+     */
+    interface RecordSink {
+        void startRecord();
+
+        /**
+         * @param name field name without namespace prefix, may repeat within a record (the last value wins)
+         */
+        void field(String name, String value);
+
+        void endRecord() throws IOException;
+    }
+
+    /**
+     * Builds a HashMap per record, as {@link SfdcClient#query(String)} always did
+     */
+    private static class MapRecordSink implements RecordSink {
+        private final RecordHandler handler;
+        private Map<String, String> row;
+
+        private MapRecordSink(RecordHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRecord() {
+            row = new HashMap<>();
+        }
+
+        @Override
+        public void field(String name, String value) {
+            row.put(name, value);
+        }
+
+        @Override
+        public void endRecord() throws IOException {
+            handler.onRecord(row);
+            row = null;
+        }
+    }
+
+    /**
+     * Reads a retrieve response, passing each record found to the handler, in the order of the requested ids
+     * @param request only used for error messages
+     * @return number of records found, ids of deleted or unknown records have no record
+     */
+    static int readRetrieveResult(InputStream inputStream, RecordHandler handler, SoapRequest request,
+                                  HeaderListener headers) throws IOException {
+        XMLStreamReader reader = open(inputStream, request);
+        try {
+            moveToBodyContent(reader, request, headers);
+            RecordSink sink = new MapRecordSink(handler);
+            int found = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT && "result".equals(reader.getLocalName())) {
+                    if ("true".equals(reader.getAttributeValue(XSI_NAMESPACE, "nil"))) {
+                        readText(reader);
+                    } else {
+                        readRecord(reader, sink);
+                        found++;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    break; // </retrieveResponse>
+                }
+            }
+            return found;
+        } catch (XMLStreamException e) {
+            throw unparsable(e, request);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Reads a getUpdated response
+     */
+    static GetUpdatedResult readGetUpdated(InputStream inputStream, SoapRequest request, HeaderListener headers)
+            throws IOException {
+        List<String> ids = new ArrayList<>();
+        String[] latestDateCovered = new String[1];
+        readResultFields(inputStream, request, headers, (reader, name) -> {
+            if ("ids".equals(name)) {
+                ids.add(readText(reader));
+            } else if ("latestDateCovered".equals(name)) {
+                latestDateCovered[0] = readText(reader);
+            } else {
+                readText(reader);
+            }
+        });
+        return new GetUpdatedResult(ids, parseDateTime(latestDateCovered[0], request));
+    }
+
+    /**
+     * Reads a getDeleted response
+     */
+    static GetDeletedResult readGetDeleted(InputStream inputStream, SoapRequest request, HeaderListener headers)
+            throws IOException {
+        List<GetDeletedResult.DeletedRecord> deleted = new ArrayList<>();
+        String[] dates = new String[2];
+        readResultFields(inputStream, request, headers, (reader, name) -> {
+            if ("deletedRecords".equals(name)) {
+                String id = null;
+                String deletedDate = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String field = reader.getLocalName();
+                        String text = readText(reader);
+                        if ("id".equals(field)) {
+                            id = text;
+                        } else if ("deletedDate".equals(field)) {
+                            deletedDate = text;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        break;
+                    }
+                }
+                deleted.add(new GetDeletedResult.DeletedRecord(id, parseDateTime(deletedDate, request)));
+            } else if ("earliestDateAvailable".equals(name)) {
+                dates[0] = readText(reader);
+            } else if ("latestDateCovered".equals(name)) {
+                dates[1] = readText(reader);
+            } else {
+                readText(reader);
+            }
+        });
+        return new GetDeletedResult(deleted, parseDateTime(dates[0], request), parseDateTime(dates[1], request));
+    }
+
+    /**
+     * Reads a getServerTimestamp response
+     */
+    static Instant readServerTimestamp(InputStream inputStream, SoapRequest request, HeaderListener headers)
+            throws IOException {
+        String[] timestamp = new String[1];
+        readResultFields(inputStream, request, headers, (reader, name) -> timestamp[0] = readText(reader));
+        return parseDateTime(timestamp[0], request);
+    }
+
+    /**
+     * Passes each child element of the single result element of a response to the reader
+     */
+    private static void readResultFields(InputStream inputStream, SoapRequest request, HeaderListener headers,
+                                         ResultFieldReader fieldReader) throws IOException {
+        XMLStreamReader reader = open(inputStream, request);
+        try {
+            moveToBodyContent(reader, request, headers);
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 2) {
+                        // Leaves the reader on the matching END_ELEMENT
+                        fieldReader.read(reader, reader.getLocalName());
+                        depth--;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 0) {
+                        break;
+                    }
+                    depth--;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw unparsable(e, request);
+        } finally {
+            close(reader);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResultFieldReader {
+        /**
+         * Positioned on the START_ELEMENT of the field, must read up to its END_ELEMENT
+         */
+        void read(XMLStreamReader reader, String name) throws XMLStreamException, IOException;
+    }
+
+    private static Instant parseDateTime(String text, SoapRequest request) throws IOException {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        try {
+            return DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(text, Instant::from);
+        } catch (DateTimeException e) {
+            throw new IOException("Salesforce returned an unparsable dateTime " + text + " for request " + request, e);
+        }
+    }
+
+    /**
+     * Decodes values per the describe metadata of their field, see {@link ValueCodec#decode(FieldDescribe, String)}
+     */
+    private static class TypedRecordSink implements RecordSink {
+        private final SObjectDescribe describe;
+        private final TypedRecordHandler handler;
+        private Map<String, Object> row;
+
+        private TypedRecordSink(SObjectDescribe describe, TypedRecordHandler handler) {
+            this.describe = describe;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRecord() {
+            row = new HashMap<>();
+        }
+
+        @Override
+        public void field(String name, String value) {
+            row.put(name, ValueCodec.decode(describe == null ? null : describe.getField(name), value));
+        }
+
+        @Override
+        public void endRecord() throws IOException {
+            handler.onRecord(row);
+            row = null;
+        }
+    }
+
+    /**
+     * Reads a describeSObject response, keeping only what is needed to convert field values
+     * @param headers receives values of the response's SOAP header, null to skip them
+     */
+    static SObjectDescribe readDescribeSObject(InputStream inputStream, SoapRequest request, HeaderListener headers)
+            throws IOException {
+        XMLStreamReader reader = open(inputStream, request);
+        try {
+            moveToBodyContent(reader, request, headers);
+            String name = null;
+            List<FieldDescribe> fields = new ArrayList<>();
+            // Positioned on <describeSObjectResponse>, its only child is <result>
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 2) {
+                        String element = reader.getLocalName();
+                        if ("fields".equals(element)) {
+                            fields.add(readFieldDescribe(reader));
+                        } else if ("name".equals(element)) {
+                            name = readText(reader);
+                        } else {
+                            readText(reader); // child relationships, record type infos etc.
+                        }
+                        depth--;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 0) {
+                        break; // </describeSObjectResponse>
+                    }
+                    depth--;
+                }
+            }
+            return new SObjectDescribe(name, fields);
+        } catch (XMLStreamException e) {
+            throw unparsable(e, request);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static FieldDescribe readFieldDescribe(XMLStreamReader reader) throws XMLStreamException {
+        String name = null;
+        String type = null;
+        String soapType = null;
+        boolean createable = false;
+        boolean updateable = false;
+        boolean nillable = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String element = reader.getLocalName();
+                String text = readText(reader);
+                if ("name".equals(element)) {
+                    name = text;
+                } else if ("type".equals(element)) {
+                    type = text;
+                } else if ("soapType".equals(element)) {
+                    soapType = text;
+                } else if ("createable".equals(element)) {
+                    createable = Boolean.parseBoolean(text);
+                } else if ("updateable".equals(element)) {
+                    updateable = Boolean.parseBoolean(text);
+                } else if ("nillable".equals(element)) {
+                    nillable = Boolean.parseBoolean(text);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        return new FieldDescribe(name, type, soapType, createable, updateable, nillable);
+    }
+
+    /**
+     * Positioned on a START_ELEMENT, returns all text below it and leaves the reader on the matching END_ELEMENT
+     */
+    static String readText(XMLStreamReader reader) throws XMLStreamException {
+        String first = null;
+        StringBuilder text = null;
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE || event == XMLStreamConstants.ENTITY_REFERENCE) {
+                // Most values arrive as a single event, only allocate a builder when they do not
+                if (first == null) {
+                    first = reader.getText();
+                } else {
+                    if (text == null) {
+                        text = new StringBuilder(first);
+                    }
+                    text.append(reader.getText());
+                }
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        if (text != null) {
+            return text.toString();
+        }
+        return first == null ? "" : first;
+    }
+
+    static XMLStreamReader open(InputStream inputStream, SoapRequest request) throws IOException {
+        try {
+            return XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+        } catch (XMLStreamException e) {
+            throw unparsable(e, request);
+        }
+    }
+
+    static void close(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            // Nothing left to read, the HTTP response is closed by the caller
+        }
+    }
+
+    /**
+     * Advances to the first element inside env:Body, throwing a {@link SfdcFaultException} if it is a fault
+     * @param headers receives values of the SOAP header on the way, null to skip them
+     */
+    static void moveToBodyContent(XMLStreamReader reader, SoapRequest request, HeaderListener headers)
+            throws XMLStreamException, IOException {
+        boolean inBody = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (inBody) {
+                    if ("Fault".equals(reader.getLocalName())) {
+                        throw readFault(reader, request);
+                    }
+                    return;
+                }
+                if ("Body".equals(reader.getLocalName())) {
+                    inBody = true;
+                } else if (headers != null && "limitInfo".equals(reader.getLocalName())) {
+                    readLimitInfo(reader, headers);
+                }
+            }
+        }
+        throw new IOException("Salesforce returned a response without a SOAP body for request " + request);
+    }
+
+    /**
+     * Positioned on a START_ELEMENT of limitInfo (inside LimitInfoHeader), reads it up to the matching END_ELEMENT
+     */
+    private static void readLimitInfo(XMLStreamReader reader, HeaderListener headers) throws XMLStreamException {
+        String type = null;
+        long current = -1;
+        long limit = -1;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                String text = readText(reader).trim();
+                try {
+                    if ("type".equals(name)) {
+                        type = text;
+                    } else if ("current".equals(name)) {
+                        current = Long.parseLong(text);
+                    } else if ("limit".equals(name)) {
+                        limit = Long.parseLong(text);
+                    }
+                } catch (NumberFormatException e) {
+                    // Leave it unknown, the header is informational only
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        if (type != null) {
+            headers.limitInfo(type, current, limit);
+        }
+    }
+
+    /**
+     * Receives values from the SOAP header of a response
+     */
+    interface HeaderListener {
+        /**
+         * @param type such as "API REQUESTS"
+         * @param current amount used, -1 if not reported
+         * @param limit -1 if not reported
+         */
+        void limitInfo(String type, long current, long limit);
+    }
+
+    private static SfdcFaultException readFault(XMLStreamReader reader, SoapRequest request) throws XMLStreamException {
+        String faultCode = null;
+        String faultString = null;
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("faultcode".equals(name)) {
+                    faultCode = stripPrefix(readText(reader).trim());
+                } else if ("faultstring".equals(name)) {
+                    faultString = readText(reader);
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        return SfdcFaultException.of(faultCode, faultString, String.valueOf(request));
+    }
+
+    static String stripPrefix(String name) {
+        int colon = name.indexOf(':');
+        return colon < 0 ? name : name.substring(colon + 1);
+    }
+
+    private static IOException unparsable(XMLStreamException e, SoapRequest request) {
+        return new IOException("Salesforce returned unparsable content. Could not parse response " + e.getMessage()
+                + " with request " + request, e);
+    }
+}
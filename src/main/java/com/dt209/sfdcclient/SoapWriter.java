@@ -0,0 +1,161 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.Map;
+
+import okio.BufferedSink;
+import okio.ByteString;
+
+/**
+ * Writes the body of a SOAP request straight into the HTTP sink. Fixed markup is pre-encoded, field values are
+ * escaped while being written so no intermediate Strings are built.
+ */
+final class SoapWriter {
+    private static final ByteString SOBJECTS_START_TYPE = ByteString.encodeUtf8("<n1:sObjects><n2:type>");
+    private static final ByteString TYPE_END = ByteString.encodeUtf8("</n2:type>");
+    private static final ByteString ID_START = ByteString.encodeUtf8("<n2:id>");
+    private static final ByteString ID_END = ByteString.encodeUtf8("</n2:id>");
+    private static final ByteString SOBJECTS_END = ByteString.encodeUtf8("</n1:sObjects>");
+    private static final ByteString AMP = ByteString.encodeUtf8("&amp;");
+    private static final ByteString LT = ByteString.encodeUtf8("&lt;");
+    private static final ByteString GT = ByteString.encodeUtf8("&gt;");
+    private static final ByteString QUOT = ByteString.encodeUtf8("&quot;");
+    private static final ByteString APOS = ByteString.encodeUtf8("&apos;");
+
+    private final BufferedSink sink;
+
+    SoapWriter(BufferedSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Writes markup as is, nothing is escaped
+     */
+    SoapWriter raw(String xml) throws IOException {
+        sink.writeUtf8(xml);
+        return this;
+    }
+
+    SoapWriter raw(ByteString xml) throws IOException {
+        sink.write(xml);
+        return this;
+    }
+
+    /**
+     * Writes text content, escaped the same way as StringEscapeUtils.escapeXml10 (characters not allowed in
+     * XML 1.0 are dropped)
+     */
+    SoapWriter escaped(String text) throws IOException {
+        int length = text.length();
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            ByteString entity;
+            switch (c) {
+                case '&': entity = AMP; break;
+                case '<': entity = LT; break;
+                case '>': entity = GT; break;
+                case '"': entity = QUOT; break;
+                case '\'': entity = APOS; break;
+                default: entity = null;
+            }
+            boolean numeric = (c >= 0x7f && c <= 0x84) || (c >= 0x86 && c <= 0x9f);
+            boolean invalid = (c < 0x20 && c != '\t' && c != '\n' && c != '\r') || c == 0xfffe || c == 0xffff;
+            if (entity == null && !numeric && !invalid) {
+                continue;
+            }
+            if (runStart < i) {
+                sink.writeUtf8(text, runStart, i);
+            }
+            runStart = i + 1;
+            if (entity != null) {
+                sink.write(entity);
+            } else if (numeric) {
+                sink.writeUtf8("&#").writeDecimalLong(c).writeByte(';');
+            }
+        }
+        if (runStart < length) {
+            sink.writeUtf8(text, runStart, length);
+        }
+        return this;
+    }
+
+    /**
+     * Writes &lt;name&gt;escaped text&lt;/name&gt;
+     */
+    SoapWriter element(String name, String text) throws IOException {
+        sink.writeByte('<').writeUtf8(name).writeByte('>');
+        escaped(text);
+        sink.writeUtf8("</").writeUtf8(name).writeByte('>');
+        return this;
+    }
+
+    /**
+     * Checks and formats the fields of one sObject. Requests are built from the result, so that a value that can not
+     * be written fails the call before anything is sent, rather than half way through a body OkHttp may send again.
+     * @param id null when creating or upserting, otherwise written as n2:id and the "id" key of fields is skipped
+     * @param describe formats values per field type and rejects unknown fields, null to format by value type only
+     * @throws IOException if a value can not be written, see {@link ValueCodec#encode(FieldDescribe, Object)}
+     */
+    static EncodedSObject encode(String sfdcObjectType, Object id, Map<String, Object> fields, SObjectDescribe describe)
+            throws IOException {
+        String[] names = new String[fields.size()];
+        String[] texts = new String[fields.size()];
+        int count = 0;
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            Object value = field.getValue();
+            String name = field.getKey();
+            if (value == null || (id != null && "id".equals(name))) {
+                continue;
+            }
+            FieldDescribe fieldDescribe = null;
+            if (describe != null) {
+                fieldDescribe = describe.getField(name);
+                if (fieldDescribe == null) {
+                    throw new IOException("Can not write field " + name + ", " + sfdcObjectType + " has no such field");
+                }
+            }
+            try {
+                texts[count] = ValueCodec.encode(fieldDescribe, value);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Can not write field " + name + " of " + sfdcObjectType + ": " + e.getMessage(), e);
+            }
+            names[count++] = name;
+        }
+        return new EncodedSObject(sfdcObjectType, id == null ? null : id.toString(), names, texts, count);
+    }
+
+    /**
+     * Writes one n1:sObjects element, null values are skipped
+     */
+    SoapWriter sObject(EncodedSObject sObject) throws IOException {
+        sink.write(SOBJECTS_START_TYPE).writeUtf8(sObject.sfdcObjectType).write(TYPE_END);
+        if (sObject.id != null) {
+            sink.write(ID_START).writeUtf8(sObject.id).write(ID_END);
+        }
+        for (int i = 0; i < sObject.count; i++) {
+            element(sObject.names[i], sObject.texts[i]);
+        }
+        sink.write(SOBJECTS_END);
+        return this;
+    }
+
+    /**
+     * An sObject with its field values already formatted, see {@link #encode(String, Object, Map, SObjectDescribe)}
+     */
+    static final class EncodedSObject {
+        private final String sfdcObjectType;
+        private final String id;
+        private final String[] names;
+        private final String[] texts;
+        private final int count;
+
+        private EncodedSObject(String sfdcObjectType, String id, String[] names, String[] texts, int count) {
+            this.sfdcObjectType = sfdcObjectType;
+            this.id = id;
+            this.names = names;
+            this.texts = texts;
+            this.count = count;
+        }
+    }
+}
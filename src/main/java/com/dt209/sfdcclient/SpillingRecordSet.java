@@ -0,0 +1,304 @@
+package com.dt209.sfdcclient;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Query result that keeps rows on the heap until their estimated size reaches a budget, and appends the rest to a
+ * temporary file, so that extracts larger than the heap can be held and read like a {@link RecordSet}.
+ * <ul>
+ *     <li>Field names are stored once, in the shared {@link RecordSchema}. A row on disk is its length, its number
+ *     of columns and then the length prefixed UTF-8 value of each column (-1 for a missing value).</li>
+ *     <li>Rows on disk are read back through memory mapped segments of the file, so the OS page cache rather than
+ *     the heap holds them, and are decoded again on every access</li>
+ * </ul>
+ * Filled by one thread, {@link #sink()} or {@link #onRecord(Map)}, then read by any number. Closing deletes the file.
+ */
+public class SpillingRecordSet extends AbstractList<Record> implements RecordHandler, Closeable {
+    /**
+     * Mapped at a time, a row crossing the end of a segment is read with a plain positional read instead
+     */
+    private static final long SEGMENT_BYTES = 256L * 1024 * 1024;
+
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private final long maxHeapBytes;
+    private final Path directory;
+    private final RecordSchema schema = new RecordSchema();
+    private final List<String[]> rows = new ArrayList<>();
+    private long heapBytes;
+
+    private Path file;
+    private FileChannel channel;
+    private DataOutputStream output;
+    private long fileBytes;
+    private boolean unflushed;
+    private long[] offsets = new long[1024];
+    private int spilledRows;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private boolean closed;
+
+    /**
+     * Spills to the default temporary file directory
+     * @param maxHeapBytes estimated heap use of the rows kept in memory, rows beyond it go to disk
+     */
+    public SpillingRecordSet(long maxHeapBytes) {
+        this(maxHeapBytes, null);
+    }
+
+    /**
+     * @param directory where the spill file is created, null for the default temporary file directory
+     */
+    public SpillingRecordSet(long maxHeapBytes, Path directory) {
+        this.maxHeapBytes = maxHeapBytes;
+        this.directory = directory;
+    }
+
+    public RecordSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return number of rows written to disk rather than kept in memory
+     */
+    public int getSpilledRows() {
+        return spilledRows;
+    }
+
+    /**
+     * @return bytes written to the spill file
+     */
+    public long getSpilledBytes() {
+        return fileBytes;
+    }
+
+    @Override
+    public synchronized Record get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        }
+        if (index < rows.size()) {
+            return new Record(schema, rows.get(index));
+        }
+        try {
+            return new Record(schema, readRow(index - rows.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read row " + index + " from " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return rows.size() + spilledRows;
+    }
+
+    /**
+     * Adds a row, for filling the set from a {@link QueryCursor} or any other source of map rows
+     */
+    @Override
+    public synchronized void onRecord(Map<String, String> record) throws IOException {
+        String[] row = new String[Math.max(schema.size(), record.size())];
+        int position = 0;
+        int columns = 0;
+        for (Map.Entry<String, String> field : record.entrySet()) {
+            int index = schema.columnOf(field.getKey(), position);
+            position = index + 1;
+            if (index >= row.length) {
+                row = Arrays.copyOf(row, schema.size());
+            }
+            row[index] = field.getValue();
+            columns = Math.max(columns, index + 1);
+        }
+        add(columns < row.length ? Arrays.copyOf(row, columns) : row);
+    }
+
+    /**
+     * Deletes the spill file, rows on disk can no longer be read
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        segments = new MappedByteBuffer[0];
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            logger.warning(() -> "Could not close spill file " + file + " " + e);
+        }
+        try {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warning(() -> "Could not delete spill file " + file + " " + e);
+        }
+    }
+
+    /**
+     * @return sink that appends the records of a query response to this set
+     */
+    SoapResponseParser.RecordSink sink() {
+        return new Sink();
+    }
+
+    private synchronized void add(String[] row) throws IOException {
+        if (closed) {
+            throw new IOException("Spilling record set is closed");
+        }
+        if (spilledRows == 0 && heapBytes < maxHeapBytes) {
+            rows.add(row);
+            heapBytes += estimateHeapBytes(row);
+            return;
+        }
+        if (output == null) {
+            file = directory == null ? Files.createTempFile("sfdcclient-", ".spill")
+                    : Files.createTempFile(directory, "sfdcclient-", ".spill");
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            logger.fine(() -> "Heap budget of " + maxHeapBytes + " bytes used by " + rows.size()
+                    + " rows, spilling the rest to " + file);
+        }
+        byte[][] values = new byte[row.length][];
+        int length = 2;
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] != null) {
+                values[i] = row[i].getBytes(StandardCharsets.UTF_8);
+                length += values[i].length;
+            }
+            length += 4;
+        }
+        output.writeInt(length);
+        output.writeShort(row.length);
+        for (byte[] value : values) {
+            if (value == null) {
+                output.writeInt(-1);
+            } else {
+                output.writeInt(value.length);
+                output.write(value);
+            }
+        }
+        if (spilledRows == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[spilledRows++] = fileBytes;
+        fileBytes += 4 + length;
+        unflushed = true;
+    }
+
+    private String[] readRow(int spilledIndex) throws IOException {
+        if (closed) {
+            throw new IOException("Spilling record set is closed");
+        }
+        if (unflushed) {
+            output.flush();
+            unflushed = false;
+        }
+        long offset = offsets[spilledIndex];
+        long end = spilledIndex + 1 < spilledRows ? offsets[spilledIndex + 1] : fileBytes;
+        int segment = (int) (offset / SEGMENT_BYTES);
+        ByteBuffer buffer;
+        if (end <= (segment + 1) * SEGMENT_BYTES) {
+            buffer = mapped(segment, end).duplicate();
+            buffer.position((int) (offset - segment * SEGMENT_BYTES));
+        } else {
+            buffer = ByteBuffer.allocate((int) (end - offset));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Spill file " + file + " ends before row " + spilledIndex);
+                }
+            }
+            buffer.flip();
+        }
+        buffer.getInt(); // row length
+        String[] row = new String[buffer.getShort()];
+        for (int i = 0; i < row.length; i++) {
+            int length = buffer.getInt();
+            if (length >= 0) {
+                byte[] value = new byte[length];
+                buffer.get(value);
+                row[i] = new String(value, StandardCharsets.UTF_8);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * @return the segment, mapped again if it was mapped before the file grew past end
+     */
+    private MappedByteBuffer mapped(int segment, long end) throws IOException {
+        if (segment >= segments.length) {
+            segments = Arrays.copyOf(segments, segment + 1);
+        }
+        long start = segment * SEGMENT_BYTES;
+        MappedByteBuffer mapped = segments[segment];
+        if (mapped == null || start + mapped.capacity() < end) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_BYTES, fileBytes - start));
+            segments[segment] = mapped;
+        }
+        return mapped;
+    }
+
+    /**
+     * Rough heap use of a row held as a String array: array and String headers plus two bytes per char
+     */
+    private static long estimateHeapBytes(String[] row) {
+        long bytes = 16 + 8L * row.length;
+        for (String value : row) {
+            if (value != null) {
+                bytes += 40 + 2L * value.length();
+            }
+        }
+        return bytes;
+    }
+
+    private class Sink implements SoapResponseParser.RecordSink {
+        private String[] row;
+        /**
+         * Column expected for the next field, the one after the column of the previous field
+         */
+        private int position;
+
+        @Override
+        public void startRecord() {
+            row = new String[Math.max(schema.size(), 1)];
+            position = 0;
+        }
+
+        @Override
+        public void field(String name, String value) {
+            int index = schema.columnOf(name, position);
+            position = index + 1;
+            if (index >= row.length) {
+                row = Arrays.copyOf(row, schema.size());
+            }
+            row[index] = value;
+        }
+
+        @Override
+        public void endRecord() throws IOException {
+            add(row);
+            row = null;
+        }
+    }
+}
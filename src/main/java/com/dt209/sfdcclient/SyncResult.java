@@ -0,0 +1,89 @@
+package com.dt209.sfdcclient;
+
+import java.time.Instant;
+
+/**
+ * What one {@link IncrementalSync#sync(String, java.util.Collection, ChangeHandler)} run did
+ */
+public class SyncResult {
+    /**
+     * How the changes were found
+     */
+    public enum Mode {
+        /**
+         * No checkpoint yet, or deletions since the checkpoint were purged: all records were read, and records of
+         * a local copy that were not passed to the handler no longer exist
+         */
+        FULL,
+        /**
+         * getUpdated and getDeleted plus retrieve
+         */
+        REPLICATION,
+        /**
+         * queryAll on SystemModstamp, for types or windows the replication calls do not support
+         */
+        SYSTEM_MODSTAMP,
+        /**
+         * The window was too short to look for changes, nothing was read
+         */
+        NONE
+    }
+
+    private final String sfdcObjectType;
+    private final Mode mode;
+    private final Instant from;
+    private final Instant to;
+    private final long updated;
+    private final long deleted;
+
+    public SyncResult(String sfdcObjectType, Mode mode, Instant from, Instant to, long updated, long deleted) {
+        this.sfdcObjectType = sfdcObjectType;
+        this.mode = mode;
+        this.from = from;
+        this.to = to;
+        this.updated = updated;
+        this.deleted = deleted;
+    }
+
+    public String getSfdcObjectType() {
+        return sfdcObjectType;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return start of the window, null for a full sync
+     */
+    public Instant getFrom() {
+        return from;
+    }
+
+    /**
+     * @return end of the window, the new checkpoint
+     */
+    public Instant getTo() {
+        return to;
+    }
+
+    /**
+     * @return number of records passed to {@link ChangeHandler#onUpdated(java.util.Map)}
+     */
+    public long getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return number of records passed to {@link ChangeHandler#onDeleted(String, Instant)}
+     */
+    public long getDeleted() {
+        return deleted;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncResult{" + sfdcObjectType + ", mode=" + mode + ", from=" + from + ", to=" + to
+                + ", updated=" + updated + ", deleted=" + deleted + "}";
+    }
+}
@@ -0,0 +1,17 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Receives query records with typed values, see {@link SfdcClient#queryTyped(String, TypedRecordHandler)}
+ */
+@FunctionalInterface
+public interface TypedRecordHandler {
+    /**
+     * @param record field name (without namespace prefix) to value as decoded by {@link ValueCodec}, null for
+     *               fields without a value. The map is not retained by the client.
+     * @throws IOException to abort reading the rest of the response
+     */
+    void onRecord(Map<String, Object> record) throws IOException;
+}
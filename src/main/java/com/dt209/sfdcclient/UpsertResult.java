@@ -0,0 +1,22 @@
+package com.dt209.sfdcclient;
+
+import java.util.List;
+
+/**
+ * Outcome of upserting a single record
+ */
+public class UpsertResult extends SaveResult {
+    private final boolean created;
+
+    public UpsertResult(String id, boolean success, boolean created, List<SfdcError> errors) {
+        super(id, success, errors);
+        this.created = created;
+    }
+
+    /**
+     * @return true if the record was inserted, false if an existing one was updated
+     */
+    public boolean isCreated() {
+        return created;
+    }
+}
@@ -0,0 +1,195 @@
+package com.dt209.sfdcclient;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Converts field values between their SOAP text and Java types. Formatters are immutable and shared, so converting
+ * a value allocates nothing but the result.
+ * <table summary="Types">
+ *     <tr><th>SOAP type</th><th>Java type</th></tr>
+ *     <tr><td>xsd:boolean</td><td>Boolean</td></tr>
+ *     <tr><td>xsd:int</td><td>Integer</td></tr>
+ *     <tr><td>xsd:long</td><td>Long</td></tr>
+ *     <tr><td>xsd:double</td><td>BigDecimal for currency fields, Double otherwise</td></tr>
+ *     <tr><td>xsd:date</td><td>LocalDate</td></tr>
+ *     <tr><td>xsd:dateTime</td><td>Instant</td></tr>
+ *     <tr><td>xsd:time</td><td>LocalTime</td></tr>
+ *     <tr><td>xsd:base64Binary</td><td>byte[]</td></tr>
+ *     <tr><td>anything else</td><td>String</td></tr>
+ * </table>
+ */
+public final class ValueCodec {
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+            .withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS'Z'");
+    private static final DateTimeFormatter TIME_PARSER = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_TIME)
+            .optionalStart().appendLiteral('Z').optionalEnd()
+            .toFormatter();
+
+    private ValueCodec() {
+    }
+
+    /**
+     * @param field null if not known, the text is then returned as is
+     * @param text as read from the response, empty for fields without a value
+     * @return typed value, null for empty text
+     * @throws IllegalArgumentException if the text is not valid for the field's type
+     */
+    public static Object decode(FieldDescribe field, String text) {
+        if (field == null) {
+            return text;
+        }
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        try {
+            switch (field.getSoapType()) {
+                case "xsd:boolean":
+                    return Boolean.valueOf(text);
+                case "xsd:int":
+                    return Integer.valueOf(text);
+                case "xsd:long":
+                    return Long.valueOf(text);
+                case "xsd:double":
+                    return "currency".equals(field.getType()) ? new BigDecimal(text) : (Object) Double.valueOf(text);
+                case "xsd:date":
+                    return LocalDate.parse(text);
+                case "xsd:dateTime":
+                    return DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(text, Instant::from);
+                case "xsd:time":
+                    return LocalTime.parse(text, TIME_PARSER);
+                case "xsd:base64Binary":
+                    return Base64.getDecoder().decode(text);
+                default:
+                    return text;
+            }
+        } catch (DateTimeException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Can not read \"" + text + "\" as " + field, e);
+        }
+    }
+
+    /**
+     * Formats a value for a field of the given type, such as a Date for a date field (the day in UTC)
+     * @param field null if not known, see {@link #encode(Object)}
+     * @return null for null
+     * @throws IllegalArgumentException if the value can not be written to the field
+     */
+    public static String encode(FieldDescribe field, Object value) {
+        if (field == null || value == null || value instanceof String) {
+            return encode(value);
+        }
+        switch (field.getSoapType()) {
+            case "xsd:date":
+                if (value instanceof LocalDate) {
+                    return value.toString();
+                }
+                return toInstant(value, field).atOffset(ZoneOffset.UTC).toLocalDate().toString();
+            case "xsd:dateTime":
+                if (value instanceof LocalDate) {
+                    return DATE_TIME.format(((LocalDate) value).atStartOfDay(ZoneOffset.UTC));
+                }
+                return DATE_TIME.format(toInstant(value, field));
+            case "xsd:boolean":
+                if (!(value instanceof Boolean)) {
+                    throw cannotWrite(value, field);
+                }
+                return value.toString();
+            case "xsd:int":
+            case "xsd:long":
+            case "xsd:double":
+                if (!(value instanceof Number)) {
+                    throw cannotWrite(value, field);
+                }
+                return encode(value);
+            default:
+                return encode(value);
+        }
+    }
+
+    /**
+     * Formats a value without knowing the field's type: Strings as is, numbers without exponent where possible,
+     * points in time as UTC dateTimes, LocalDates as dates
+     * @return null for null
+     * @throws IllegalArgumentException if the type can not be written to Salesforce, such as a LocalDateTime
+     * (which lacks a time zone) or a nested Map
+     */
+    public static String encode(Object value) {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return value.toString();
+        }
+        if (value instanceof LocalDate) {
+            return value.toString();
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate().toString();
+        }
+        if (value instanceof LocalTime) {
+            return TIME.format((LocalTime) value);
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        if (value instanceof byte[]) {
+            return Base64.getEncoder().encodeToString((byte[]) value);
+        }
+        return DATE_TIME.format(toInstant(value, null));
+    }
+
+    /**
+     * @return a dateTime as Salesforce writes it, such as 2018-05-01T10:15:30.000Z
+     */
+    public static String formatDateTime(Instant instant) {
+        return instant == null ? null : DATE_TIME.format(instant);
+    }
+
+    private static Instant toInstant(Object value, FieldDescribe field) {
+        if (value instanceof Instant) {
+            return (Instant) value;
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate().atStartOfDay(ZoneOffset.UTC).toInstant();
+        }
+        if (value instanceof Date) {
+            return ((Date) value).toInstant();
+        }
+        if (value instanceof Calendar) {
+            return ((Calendar) value).toInstant();
+        }
+        if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).toInstant();
+        }
+        if (value instanceof ZonedDateTime) {
+            return ((ZonedDateTime) value).toInstant();
+        }
+        if (value instanceof LocalDateTime) {
+            throw new IllegalArgumentException("Can not write LocalDateTime " + value
+                    + (field == null ? "" : " to " + field) + " without a time zone, use an Instant or ZonedDateTime");
+        }
+        throw cannotWrite(value, field);
+    }
+
+    private static IllegalArgumentException cannotWrite(Object value, FieldDescribe field) {
+        return new IllegalArgumentException("Can not write a " + value.getClass().getName()
+                + (field == null ? " to Salesforce" : " to " + field));
+    }
+}
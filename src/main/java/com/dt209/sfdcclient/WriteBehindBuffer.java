@@ -0,0 +1,212 @@
+package com.dt209.sfdcclient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Queues updates and sends them as batched {@link SfdcClient#updateAll(String, List)} calls. Updates of the same
+ * record that are queued at the same time are merged into one, the last value written to a field wins, whether
+ * the record is named by its 15 or its 18 character ID.
+ * The records of one sObject type are sent once maxBatchSize of them are queued, and everything queued is sent
+ * maxDelayMillis after the first update that is still queued, whichever comes first. Batches are sent one at a
+ * time, so updates of the same record reach Salesforce in the order they were made. Each call of
+ * {@link SfdcClient#MAX_RECORDS_PER_CALL} records succeeds or fails on its own, a failed call only fails the
+ * updates it carried.
+ */
+public class WriteBehindBuffer implements Closeable {
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private final SfdcClient sfdcClient;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Guarded by this, keyed by sObject type then id, in the order records were first queued
+     */
+    private Map<String, Map<String, PendingUpdate>> pending = new LinkedHashMap<>();
+    private int pendingCount;
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed;
+
+    /**
+     * @param sfdcClient sends the updates
+     * @param maxBatchSize number of queued records of one sObject type that triggers a flush, the client still
+     *                     sends them {@link SfdcClient#MAX_RECORDS_PER_CALL} per call
+     * @param maxDelayMillis longest time an update stays queued
+     */
+    public WriteBehindBuffer(SfdcClient sfdcClient, int maxBatchSize, long maxDelayMillis) {
+        this.sfdcClient = sfdcClient;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "sfdcclient-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.scheduler = executor;
+    }
+
+    /**
+     * Queues an update
+     * @param sfdcObjectType Salesforce Object Type (such as Account or Contact etc.)
+     * @param sfdcObject an object with an "id" key and other field names that exactly match those in Sales Force
+     * @return completes with the result of the batched update this one ended up in
+     */
+    public CompletableFuture<SaveResult> update(String sfdcObjectType, Map<String, Object> sfdcObject) {
+        CompletableFuture<SaveResult> result = new CompletableFuture<>();
+        Object id = sfdcObject.get("id");
+        if (id == null) {
+            result.completeExceptionally(new IOException("The Salesforce Object does not have an \"id\" key. Please add one and submit it again"));
+            return result;
+        }
+        // A malformed ID is passed on as it is, Salesforce reports it in the result of that record
+        String fullId = SalesforceIds.toFullId(id.toString());
+        String key = fullId == null ? id.toString() : fullId;
+        synchronized (this) {
+            if (closed) {
+                result.completeExceptionally(new IOException("Write behind buffer is closed"));
+                return result;
+            }
+            Map<String, PendingUpdate> ofType = pending.computeIfAbsent(sfdcObjectType, type -> new LinkedHashMap<>());
+            PendingUpdate update = ofType.get(key);
+            if (update == null) {
+                update = new PendingUpdate();
+                ofType.put(key, update);
+                pendingCount++;
+            }
+            update.fields.putAll(sfdcObject);
+            update.results.add(result);
+
+            if (ofType.size() >= maxBatchSize) {
+                // Only this type, the others keep waiting for their own threshold or the delay
+                pending.remove(sfdcObjectType);
+                pendingCount -= ofType.size();
+                scheduler.execute(() -> send(sfdcObjectType, ofType));
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flushPending, maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of distinct records waiting to be sent
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Sends everything queued so far and waits for it. Does nothing once closed, closing sent everything.
+     */
+    public void flush() throws IOException {
+        Future<?> flush;
+        synchronized (this) {
+            if (scheduler.isShutdown()) {
+                return;
+            }
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            flush = scheduler.submit(this::flushPending);
+        }
+        await(flush);
+    }
+
+    /**
+     * Stops taking updates, sends everything queued and releases the flush thread. Does not close the client.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                scheduler.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Runs on the scheduler thread only
+     */
+    private void flushPending() {
+        Map<String, Map<String, PendingUpdate>> batch;
+        synchronized (this) {
+            scheduledFlush = null;
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            pendingCount = 0;
+        }
+        batch.forEach(this::send);
+    }
+
+    /**
+     * Sends the updates one call at a time, so that a failed call fails only its own updates
+     */
+    private void send(String sfdcObjectType, Map<String, PendingUpdate> updates) {
+        List<PendingUpdate> order = new ArrayList<>(updates.values());
+        for (int from = 0; from < order.size(); from += SfdcClient.MAX_RECORDS_PER_CALL) {
+            sendChunk(sfdcObjectType, order.subList(from, Math.min(order.size(), from + SfdcClient.MAX_RECORDS_PER_CALL)));
+        }
+    }
+
+    private void sendChunk(String sfdcObjectType, List<PendingUpdate> chunk) {
+        List<Map<String, Object>> records = new ArrayList<>(chunk.size());
+        chunk.forEach(update -> records.add(update.fields));
+        try {
+            List<SaveResult> results = sfdcClient.updateAll(sfdcObjectType, records);
+            for (int i = 0; i < chunk.size(); i++) {
+                SaveResult saveResult = i < results.size() ? results.get(i) : null;
+                for (CompletableFuture<SaveResult> result : chunk.get(i).results) {
+                    if (saveResult == null) {
+                        result.completeExceptionally(new IOException("Salesforce returned no result for the update of " + chunk.get(i).fields.get("id")));
+                    } else {
+                        result.complete(saveResult);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Could not send " + records.size() + " batched " + sfdcObjectType + " updates", e);
+            chunk.forEach(update -> update.results.forEach(result -> result.completeExceptionally(e)));
+        }
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing updates", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not flush updates " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static class PendingUpdate {
+        private final Map<String, Object> fields = new LinkedHashMap<>();
+        private final List<CompletableFuture<SaveResult>> results = new ArrayList<>(1);
+    }
+}
@@ -0,0 +1,282 @@
+package com.dt209.sfdcclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the bulk client against {@link MockSoapServer} with a stand-in for the Bulk API 2.0 resources
+ */
+public class BulkClientTest {
+    private static final String JOBS_PATH = "/services/data/v" + BulkClient.DEFAULT_API_VERSION + "/jobs/";
+
+    @Rule
+    public final MockSoapServerRule mock = new MockSoapServerRule();
+
+    private MockSoapServer server;
+    private SfdcClient sfdcClient;
+    private final Map<String, String> uploads = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> polls = new ConcurrentHashMap<>();
+    private final AtomicInteger jobNumber = new AtomicInteger();
+    private final AtomicInteger rejectSessions = new AtomicInteger();
+    /**
+     * Last path segment of the next request to reject as if the session had expired, once
+     */
+    private final AtomicReference<String> rejectSessionAt = new AtomicReference<>();
+
+    @Before
+    public void setUp() {
+        server = mock.getServer().addHandler("/services/data/", this::handleRest);
+        sfdcClient = mock.getClient();
+    }
+
+    private BulkClient bulkClient(long maxChunkBytes) {
+        return BulkClient.builder(sfdcClient).maxChunkBytes(maxChunkBytes).poll(1, 5).build();
+    }
+
+    private static Map<String, Object> account(int i) {
+        Map<String, Object> account = new LinkedHashMap<>();
+        account.put("Name", "Account, \"Co\" " + i);
+        account.put("NumberOfEmployees", i);
+        account.put("Description", i % 2 == 0 ? null : "line 1\nline 2");
+        return account;
+    }
+
+    @Test
+    public void loadSplitsIntoJobsTest() throws IOException {
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            records.add(account(i));
+        }
+        List<BulkJob> jobs = bulkClient(100).load(BulkOperation.INSERT, "Account", null, records.iterator());
+        assertTrue(jobs.size() > 1);
+
+        List<Map<String, String>> uploaded = new ArrayList<>();
+        for (BulkJob job : jobs) {
+            assertEquals(BulkJob.JOB_COMPLETE, job.getState());
+            assertTrue(job.isSuccess());
+            String csv = uploads.get(job.getId());
+            assertTrue(csv.startsWith("Name,NumberOfEmployees,Description\n"));
+            assertTrue(csv.length() <= 100 || job.getNumberRecordsProcessed() == 1);
+            Csv.RowReader reader = new Csv.RowReader(new StringReader(csv));
+            List<String> header = reader.readRow();
+            for (List<String> row = reader.readRow(); row != null; row = reader.readRow()) {
+                Map<String, String> record = new LinkedHashMap<>();
+                for (int i = 0; i < header.size(); i++) {
+                    record.put(header.get(i), row.get(i));
+                }
+                uploaded.add(record);
+            }
+        }
+        assertEquals(5, uploaded.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("Account, \"Co\" " + i, uploaded.get(i).get("Name"));
+            assertEquals(String.valueOf(i), uploaded.get(i).get("NumberOfEmployees"));
+            assertEquals(i % 2 == 0 ? "" : "line 1\nline 2", uploaded.get(i).get("Description"));
+        }
+    }
+
+    @Test
+    public void failedResultsTest() throws IOException {
+        BulkClient bulkClient = bulkClient(BulkClient.DEFAULT_MAX_CHUNK_BYTES);
+        List<BulkJob> jobs = bulkClient.load(BulkOperation.UPSERT, "Account", "External_Id__c",
+                Arrays.asList(account(1), account(2)).iterator());
+        assertEquals(1, jobs.size());
+        List<Map<String, String>> failed = new ArrayList<>();
+        assertEquals(1, bulkClient.getFailedResults(jobs.get(0).getId(), failed::add));
+        assertEquals("REQUIRED_FIELD_MISSING:Required fields are missing: [External_Id__c]",
+                failed.get(0).get("sf__Error"));
+        assertEquals("Account, \"Co\" 1", failed.get(0).get("Name"));
+    }
+
+    @Test
+    public void queryPagesTest() throws IOException {
+        List<Map<String, String>> records = new ArrayList<>();
+        assertEquals(3, bulkClient(1000).query("SELECT Id, Name FROM Account", false, records::add));
+        assertEquals("Acme, Inc", records.get(0).get("Name"));
+        assertEquals("001000000000003AAA", records.get(2).get("Id"));
+    }
+
+    @Test
+    public void queryToFileTest() throws IOException {
+        Path file = Files.createTempFile("bulk", ".csv");
+        try {
+            assertEquals(3, bulkClient(1000).queryToFile("SELECT Id, Name FROM Account", true, file));
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            assertEquals(Arrays.asList("\"Id\",\"Name\"", "\"001000000000001AAA\",\"Acme, Inc\"",
+                    "\"001000000000002AAA\",\"Globex\"", "\"001000000000003AAA\",\"Initech\""), lines);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void reloginOnInvalidSessionTest() throws IOException {
+        BulkClient bulkClient = bulkClient(1000);
+        bulkClient.query("SELECT Id FROM Account", false, record -> { });
+        rejectSessions.set(1);
+        bulkClient.query("SELECT Id FROM Account", false, record -> { });
+        assertEquals(2, server.getCalls("login"));
+    }
+
+    /**
+     * The upload is sent again in full and no page is read twice
+     */
+    @Test
+    public void reloginDuringUploadAndReadTest() throws IOException {
+        BulkClient bulkClient = bulkClient(1000);
+        rejectSessionAt.set("batches");
+        List<BulkJob> jobs = bulkClient.load(BulkOperation.INSERT, "Account", null,
+                Arrays.asList(account(1), account(2)).iterator());
+        assertEquals(2, jobs.get(0).getNumberRecordsProcessed());
+        assertTrue(uploads.get(jobs.get(0).getId()).startsWith("Name,NumberOfEmployees,Description\n"));
+
+        rejectSessionAt.set("results");
+        List<Map<String, String>> records = new ArrayList<>();
+        assertEquals(3, bulkClient.query("SELECT Id, Name FROM Account", false, records::add));
+        assertEquals(3, records.size());
+        rejectSessionAt.set("failedResults/");
+        assertEquals(1, bulkClient.getFailedResults(jobs.get(0).getId(), record -> { }));
+        assertEquals(4, server.getCalls("login"));
+    }
+
+    @Test
+    public void jsonTest() throws IOException {
+        Map<String, Object> object = new LinkedHashMap<>();
+        object.put("query", "SELECT Name FROM Account WHERE Name = 'a \"b\"\\c'\n");
+        object.put("count", 3L);
+        object.put("done", true);
+        object.put("locator", null);
+        assertEquals(object, Json.parseObject(Json.write(object)));
+        assertEquals(Arrays.asList(1L, 2.5, "\u00fc"), Json.parse(" [1, 2.5, \"\\u00fc\"] "));
+    }
+
+    @Test
+    public void csvTest() throws IOException {
+        Csv.RowReader reader = new Csv.RowReader(new StringReader("a,\"b,\"\"c\"\"\",\r\n\"x\ny\",z,\n"));
+        assertEquals(Arrays.asList("a", "b,\"c\"", ""), reader.readRow());
+        assertEquals(Arrays.asList("x\ny", "z", ""), reader.readRow());
+        assertNull(reader.readRow());
+    }
+
+    /**
+     * Jobs complete on their second poll, uploads are kept per job, queries return three records over two pages
+     */
+    private void handleRest(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath().substring(JOBS_PATH.length());
+            String body = read(exchange.getRequestBody());
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            String rejectAt = rejectSessionAt.get();
+            if (!("Bearer " + MockSoapServer.SESSION_ID).equals(authorization)
+                    || rejectSessions.getAndUpdate(left -> Math.max(0, left - 1)) > 0
+                    || (rejectAt != null && path.endsWith(rejectAt) && rejectSessionAt.compareAndSet(rejectAt, null))) {
+                respond(exchange, 401, "application/json",
+                        "[{\"message\":\"Session expired or invalid\",\"errorCode\":\"INVALID_SESSION_ID\"}]");
+                return;
+            }
+            String[] parts = path.split("/");
+            String kind = parts[0];
+            if ("POST".equals(method) && parts.length == 1) {
+                String id = "750" + kind + jobNumber.incrementAndGet();
+                polls.put(id, new AtomicInteger());
+                Map<String, Object> request = Json.parseObject(body);
+                respondJson(exchange, job(id, "Open", request.get("operation")));
+            } else if ("PUT".equals(method) && "batches".equals(parts[2])) {
+                uploads.put(parts[1], body);
+                respond(exchange, 201, "text/plain", "");
+            } else if ("PATCH".equals(method)) {
+                respondJson(exchange, job(parts[1], (String) Json.parseObject(body).get("state"), null));
+            } else if ("GET".equals(method) && parts.length == 2) {
+                boolean done = polls.get(parts[1]).incrementAndGet() > 1;
+                respondJson(exchange, job(parts[1], done ? BulkJob.JOB_COMPLETE : "InProgress", null));
+            } else if ("GET".equals(method) && "failedResults".equals(parts[2])) {
+                respond(exchange, 200, "text/csv", "\"sf__Id\",\"sf__Error\",Name,NumberOfEmployees,Description\n"
+                        + "\"\",\"REQUIRED_FIELD_MISSING:Required fields are missing: [External_Id__c]\","
+                        + "\"Account, \"\"Co\"\" 1\",1,\"line 1\nline 2\"\n");
+            } else if ("GET".equals(method) && "results".equals(parts[2])) {
+                boolean firstPage = exchange.getRequestURI().getQuery() == null;
+                exchange.getResponseHeaders().set("Sforce-Locator", firstPage ? "MjAwMDAw" : "null");
+                exchange.getResponseHeaders().set("Sforce-NumberOfRecords", firstPage ? "2" : "1");
+                respond(exchange, 200, "text/csv", firstPage
+                        ? "\"Id\",\"Name\"\n\"001000000000001AAA\",\"Acme, Inc\"\n\"001000000000002AAA\",\"Globex\"\n"
+                        : "\"Id\",\"Name\"\n\"001000000000003AAA\",\"Initech\"\n");
+            } else {
+                respond(exchange, 404, "application/json",
+                        "[{\"message\":\"No such resource\",\"errorCode\":\"NOT_FOUND\"}]");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Map<String, Object> job(String id, String state, Object operation) {
+        Map<String, Object> job = new LinkedHashMap<>();
+        job.put("id", id);
+        job.put("operation", operation == null ? "insert" : operation);
+        job.put("object", "Account");
+        job.put("state", state);
+        String csv = uploads.get(id);
+        if (csv != null) {
+            try {
+                Csv.RowReader reader = new Csv.RowReader(new StringReader(csv));
+                long rows = -1;
+                while (reader.readRow() != null) {
+                    rows++;
+                }
+                job.put("numberRecordsProcessed", rows);
+                job.put("numberRecordsFailed", 0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return job;
+    }
+
+    private static void respondJson(HttpExchange exchange, Map<String, Object> json) throws IOException {
+        respond(exchange, 200, "application/json", Json.write(json));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = inputStream.read(buffer); read >= 0; read = inputStream.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
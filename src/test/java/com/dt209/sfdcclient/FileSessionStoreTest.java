@@ -0,0 +1,102 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Starts clients one after the other against {@link MockSoapServer}, as separate runs of a job would
+ */
+public class FileSessionStoreTest {
+    /**
+     * Stand-in for a real cipher, enough to see the hook is used both ways
+     */
+    private static final FileSessionStore.Encryption XOR = new FileSessionStore.Encryption() {
+        @Override
+        public byte[] encrypt(byte[] plain) {
+            return xor(plain);
+        }
+
+        @Override
+        public byte[] decrypt(byte[] encrypted) {
+            return xor(encrypted);
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public final MockSoapServerRule mock = new MockSoapServerRule();
+
+    private MockSoapServer server;
+    private SfdcTransport transport;
+    private Path file;
+
+    @Before
+    public void setUp() {
+        server = mock.getServer();
+        transport = mock.getTransport();
+        file = folder.getRoot().toPath().resolve("sessions.properties");
+    }
+
+    @Test
+    public void reusesSavedSessionTest() throws IOException {
+        run(new FileSessionStore(file, XOR));
+        assertEquals(1, server.getCalls("login"));
+        String content = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+        assertFalse(content.contains("!session"));
+
+        run(new FileSessionStore(file, XOR));
+        assertEquals(1, server.getCalls("login"));
+        assertEquals(2, server.getCalls("getServerTimestamp"));
+
+        // Rejected by Salesforce, logs in and saves the new session for the next run
+        server.expireSession();
+        run(new FileSessionStore(file, XOR));
+        assertEquals(2, server.getCalls("login"));
+        run(new FileSessionStore(file, XOR));
+        assertEquals(2, server.getCalls("login"));
+
+        // Without the encryption the saved session can not be read, logs in and replaces it
+        run(new FileSessionStore(file));
+        assertEquals(3, server.getCalls("login"));
+        assertTrue(new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1).contains("!session"));
+    }
+
+    @Test
+    public void expiringSessionNotReusedTest() throws IOException {
+        server.setSessionSecondsValid(60);
+        run(new FileSessionStore(file));
+        run(new FileSessionStore(file));
+        assertEquals(2, server.getCalls("login"));
+    }
+
+    private void run(SessionStore store) throws IOException {
+        SfdcClient sfdcClient = new SfdcClient(server.getLoginUrl(), "user", "password", "token", transport);
+        try {
+            sfdcClient.setSessionStore(store);
+            sfdcClient.warmUp();
+        } finally {
+            sfdcClient.close();
+        }
+    }
+
+    private static byte[] xor(byte[] bytes) {
+        byte[] result = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i] = (byte) (bytes[i] ^ 0x5A);
+        }
+        return result;
+    }
+}
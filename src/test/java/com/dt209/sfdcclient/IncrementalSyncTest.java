@@ -0,0 +1,125 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Syncs against {@link MockSoapServer}, which reports a few changes in every window
+ */
+public class IncrementalSyncTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public final MockSoapServerRule mock = new MockSoapServerRule();
+
+    private MockSoapServer server;
+    private SfdcClient sfdcClient;
+    private Path checkpointFile;
+    private final Map<String, Map<String, String>> mirror = new HashMap<>();
+    private final List<String> deletedIds = new ArrayList<>();
+    private final List<String> fullSyncs = new ArrayList<>();
+    private final ChangeHandler handler = new ChangeHandler() {
+        @Override
+        public void onFullSync(String sfdcObjectType) {
+            mirror.clear();
+            fullSyncs.add(sfdcObjectType);
+        }
+
+        @Override
+        public void onUpdated(Map<String, String> record) {
+            mirror.put(record.get("Id"), record);
+        }
+
+        @Override
+        public void onDeleted(String id, Instant deletedDate) {
+            mirror.remove(id);
+            deletedIds.add(id);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        server = mock.getServer();
+        sfdcClient = mock.getClient();
+        checkpointFile = folder.getRoot().toPath().resolve("sync").resolve("checkpoints.properties");
+    }
+
+    @Test
+    public void fullThenReplicationTest() throws IOException {
+        IncrementalSync sync = new IncrementalSync(sfdcClient, checkpointFile);
+        server.setServerTimestamp("2018-05-01T10:15:30.250Z");
+        SyncResult full = sync.sync("Account", Arrays.asList("Name", "Industry"), handler);
+        assertEquals(SyncResult.Mode.FULL, full.getMode());
+        assertEquals(10, full.getUpdated());
+        assertEquals(10, mirror.size());
+        assertEquals(Collections.singletonList("Account"), fullSyncs);
+        assertEquals(Instant.parse("2018-05-01T10:15:30Z"), sync.getCheckpoint("Account"));
+
+        server.setServerTimestamp("2018-05-01T11:20:45.000Z");
+        SyncResult incremental = sync.sync("Account", Arrays.asList("Name", "Industry"), handler);
+        assertEquals(SyncResult.Mode.REPLICATION, incremental.getMode());
+        assertEquals(3, incremental.getUpdated());
+        assertEquals(1, incremental.getDeleted());
+        assertEquals(1, server.getCalls("retrieve"));
+        assertEquals("001000000000011AAA", deletedIds.get(0));
+        assertEquals(Instant.parse("2018-05-01T11:20:00Z"), incremental.getTo());
+        assertEquals(1, fullSyncs.size());
+
+        // Resumes from the file, and the window since the rounded down checkpoint is too short to look at
+        IncrementalSync restarted = new IncrementalSync(sfdcClient, checkpointFile);
+        assertEquals(Instant.parse("2018-05-01T11:20:00Z"), restarted.getCheckpoint("Account"));
+        assertEquals(SyncResult.Mode.NONE, restarted.sync("Account", Arrays.asList("Name"), handler).getMode());
+        assertEquals(1, server.getCalls("getUpdated"));
+        assertNull(restarted.getCheckpoint("Contact"));
+    }
+
+    @Test
+    public void systemModstampFallbackTest() throws IOException {
+        IncrementalSync sync = new IncrementalSync(sfdcClient, checkpointFile);
+        sync.setCheckpoint("Account", Instant.parse("2018-03-01T00:00:00Z"));
+        server.setServerTimestamp("2018-05-01T10:15:30.000Z");
+        server.failAlways("getUpdated", "INVALID_REPLICATION_DATE");
+        SyncResult result = sync.sync("Account", Arrays.asList("Id", "Name"), handler);
+        assertEquals(SyncResult.Mode.SYSTEM_MODSTAMP, result.getMode());
+        assertEquals(10, result.getUpdated());
+        assertEquals(1, server.getCalls("queryAll"));
+        assertEquals(Instant.parse("2018-05-01T10:15:30Z"), sync.getCheckpoint("Account"));
+    }
+
+    @Test
+    public void purgedDeletionsTest() throws IOException {
+        IncrementalSync sync = new IncrementalSync(sfdcClient, checkpointFile);
+        // The mock has deletions available from 2018-04-01 on
+        sync.setCheckpoint("Account", Instant.parse("2018-03-25T00:00:00Z"));
+        server.setServerTimestamp("2018-04-10T08:00:00.000Z");
+        // Deleted while the deletions were purged, only the full read tells
+        mirror.put("001000000000099AAA", Collections.singletonMap("Id", "001000000000099AAA"));
+        SyncResult result = sync.sync("Account", Arrays.asList("Name"), handler);
+        assertEquals(SyncResult.Mode.FULL, result.getMode());
+        assertNull(result.getFrom());
+        assertEquals(10, result.getUpdated());
+        assertEquals(10, mirror.size());
+        assertFalse(mirror.containsKey("001000000000099AAA"));
+        assertEquals(Collections.singletonList("Account"), fullSyncs);
+        assertEquals(0, server.getCalls("retrieve"));
+        assertEquals(1, server.getCalls("query"));
+        assertEquals(Instant.parse("2018-04-10T08:00:00Z"), sync.getCheckpoint("Account"));
+    }
+}
@@ -0,0 +1,559 @@
+package com.dt209.sfdcclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.HttpUrl;
+
+/**
+ * Local stand-in for the Salesforce Partner SOAP API, serves canned login, query/queryAll/queryMore, create,
+ * update, upsert, delete, describeSObject, retrieve, getUpdated, getDeleted and getServerTimestamp responses plus
+ * injected faults. Sizes and latency are configurable so that tests and
+ * benchmarks can run without a live org.
+ */
+public class MockSoapServer implements Closeable {
+    public static final String SOAP_PATH = "/services/Soap/u/42.0";
+    public static final String SESSION_ID = "00Dmock!session";
+
+    private static final String ENVELOPE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\""
+            + " xmlns=\"urn:partner.soap.sforce.com\" xmlns:sf=\"urn:sobject.partner.soap.sforce.com\""
+            + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+            + "<soapenv:Header><LimitInfoHeader><limitInfo><current>%d</current><limit>15000</limit>"
+            + "<type>API REQUESTS</type></limitInfo></LimitInfoHeader></soapenv:Header><soapenv:Body>";
+    private static final String ENVELOPE_END = "</soapenv:Body></soapenv:Envelope>";
+    private static final Pattern OPERATION = Pattern.compile("<env:Body>\\s*<n1:(\\w+)");
+    private static final Pattern SESSION = Pattern.compile("<n1:sessionId>([^<]*)</n1:sessionId>");
+    private static final Pattern LOCATOR = Pattern.compile("<n1:queryLocator>locator-(\\d+)-(\\d+)-(\\d+)</n1:queryLocator>");
+    private static final Pattern CREATED_DATE_ORDER = Pattern.compile("ORDER BY CreatedDate (ASC|DESC) LIMIT 1");
+    private static final Pattern CREATED_DATE_RANGE = Pattern.compile(
+            "CreatedDate (?:>|&gt;)= (\\S+Z) AND CreatedDate (?:<|&lt;) (\\S+Z)");
+    private static final Instant FIRST_CREATED_DATE = Instant.parse("2018-01-01T00:00:00Z");
+    private static final Pattern BATCH_SIZE = Pattern.compile("<n1:batchSize>(\\d+)</n1:batchSize>");
+    private static final Pattern RECORD_ID = Pattern.compile("<n(?:2:id|1:ids)>(\\w+)</n(?:2:id|1:ids)>");
+    private static final Pattern ROW_ID = Pattern.compile("<n1:ids>001(\\d{12})AAA</n1:ids>");
+    private static final Pattern END_DATE = Pattern.compile("<n1:endDate>(\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d)");
+
+    static {
+        // Otherwise Nagle's algorithm holds back the response body behind the headers, adding ~40ms per call
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private final Map<String, String> lastRequests = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> renderedBatches = new ConcurrentHashMap<>();
+    private final AtomicInteger apiRequests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Set<HttpExchange> left = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private volatile int queryRows = 10;
+    private volatile int batchSize = 500;
+    private volatile long latencyMillis;
+    private volatile long sessionSecondsValid = 7200;
+    private volatile String validSessionId = SESSION_ID;
+    private final AtomicReference<String> faultCode = new AtomicReference<>();
+    private final AtomicReference<String> faultString = new AtomicReference<>();
+    private final AtomicInteger faultsLeft = new AtomicInteger();
+    private final Map<String, String> operationFaults = new ConcurrentHashMap<>();
+    private final Map<String, String> callFaults = new ConcurrentHashMap<>();
+    private volatile int updatedRows = 3;
+    private volatile int deletedRows = 1;
+    private volatile String serverTimestamp;
+
+    /**
+     * Starts listening on a free local port
+     */
+    public MockSoapServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-soap-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * @return URL to pass to {@link SfdcClient#SfdcClient(HttpUrl, String, String, String, SfdcTransport)}
+     */
+    public HttpUrl getLoginUrl() {
+        return HttpUrl.parse("http://127.0.0.1:" + server.getAddress().getPort() + SOAP_PATH);
+    }
+
+    /**
+     * Serves another API of the same org, such as the REST API below /services/data/, next to the SOAP API
+     */
+    public MockSoapServer addHandler(String pathPrefix, HttpHandler handler) {
+        server.createContext(pathPrefix, handler);
+        return this;
+    }
+
+    /**
+     * @param queryRows total number of rows every query returns, spread over batches
+     */
+    public MockSoapServer setQueryRows(int queryRows) {
+        this.queryRows = queryRows;
+        return this;
+    }
+
+    /**
+     * @param batchSize rows per batch unless the request asks for a different size in its QueryOptions header
+     */
+    public MockSoapServer setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param latencyMillis added to every response
+     */
+    public MockSoapServer setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    public MockSoapServer setSessionSecondsValid(long sessionSecondsValid) {
+        this.sessionSecondsValid = sessionSecondsValid;
+        return this;
+    }
+
+    /**
+     * Makes the next calls (other than login) fail with a SOAP fault
+     * @param faultCode such as INVALID_SESSION_ID or REQUEST_LIMIT_EXCEEDED
+     * @param times number of calls to fail
+     */
+    public MockSoapServer failNext(String faultCode, int times) {
+        return failNext(faultCode, "Injected fault", times);
+    }
+
+    /**
+     * @param faultString such as "ConcurrentPerOrgLongTxn Limit exceeded"
+     */
+    public MockSoapServer failNext(String faultCode, String faultString, int times) {
+        this.faultCode.set(faultCode);
+        this.faultString.set(faultString);
+        this.faultsLeft.set(times);
+        return this;
+    }
+
+    /**
+     * Makes a single call of the operation fail with a SOAP fault, such as the second of a chunked update
+     * @param call 1 for the first call of the operation since the server started
+     */
+    public MockSoapServer failCall(String operation, int call, String faultCode) {
+        callFaults.put(operation + "#" + call, faultCode);
+        return this;
+    }
+
+    /**
+     * Makes every call of the operation fail with a SOAP fault, such as getUpdated for a type that is not replicateable
+     * @param faultCode null to stop failing
+     */
+    public MockSoapServer failAlways(String operation, String faultCode) {
+        if (faultCode == null) {
+            operationFaults.remove(operation);
+        } else {
+            operationFaults.put(operation, faultCode);
+        }
+        return this;
+    }
+
+    /**
+     * @param updatedRows getUpdated reports the first updatedRows query rows plus one row that no longer exists
+     * @param deletedRows number of rows getDeleted reports
+     */
+    public MockSoapServer setChanges(int updatedRows, int deletedRows) {
+        this.updatedRows = updatedRows;
+        this.deletedRows = deletedRows;
+        return this;
+    }
+
+    /**
+     * @param serverTimestamp returned by getServerTimestamp, such as 2018-05-01T10:15:30.000Z, null for the current time
+     */
+    public MockSoapServer setServerTimestamp(String serverTimestamp) {
+        this.serverTimestamp = serverTimestamp;
+        return this;
+    }
+
+    /**
+     * Rejects the current session with INVALID_SESSION_ID until the client logs in again
+     */
+    public MockSoapServer expireSession() {
+        validSessionId = "expired";
+        return this;
+    }
+
+    /**
+     * @return number of calls received for the operation, such as login, query or update
+     */
+    public int getCalls(String operation) {
+        AtomicInteger count = calls.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return most calls (including logins) that were being handled at the same time
+     */
+    public int getMaxConcurrentCalls() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * @return body of the last call received for the operation, null if there was none
+     */
+    public String getLastRequest(String operation) {
+        return lastRequests.get(operation);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            String request = read(exchange.getRequestBody());
+            Matcher operationMatcher = OPERATION.matcher(request);
+            String operation = operationMatcher.find() ? operationMatcher.group(1) : "unknown";
+            int call = calls.computeIfAbsent(operation, key -> new AtomicInteger()).incrementAndGet();
+            lastRequests.put(operation, request);
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if ("login".equals(operation)) {
+                validSessionId = SESSION_ID;
+                respond(exchange, 200, login());
+                return;
+            }
+            Matcher session = SESSION.matcher(request);
+            if (!session.find() || !session.group(1).equals(validSessionId)) {
+                respond(exchange, 500, fault("INVALID_SESSION_ID", "Invalid Session ID found in SessionHeader"));
+                return;
+            }
+            if (faultsLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                respond(exchange, 500, fault(faultCode.get(), faultString.get()));
+                return;
+            }
+            String callFault = callFaults.remove(operation + "#" + call);
+            if (callFault != null) {
+                respond(exchange, 500, fault(callFault, "Injected fault"));
+                return;
+            }
+            String operationFault = operationFaults.get(operation);
+            if (operationFault != null) {
+                respond(exchange, 500, fault(operationFault, "Injected fault"));
+                return;
+            }
+            switch (operation) {
+                case "query":
+                case "queryAll":
+                    int[] range = rowRange(request);
+                    respond(exchange, 200, queryBatch(operation, range[0], range[0], batchSize(request), range[1]));
+                    break;
+                case "queryMore":
+                    Matcher locator = LOCATOR.matcher(request);
+                    if (!locator.find()) {
+                        respond(exchange, 500, fault("INVALID_QUERY_LOCATOR", "Unknown query locator"));
+                        break;
+                    }
+                    respond(exchange, 200, queryBatch(operation, Integer.parseInt(locator.group(2)),
+                            Integer.parseInt(locator.group(1)), batchSize(request), Integer.parseInt(locator.group(3))));
+                    break;
+                case "create":
+                case "update":
+                    respond(exchange, 200, results(operation, request, count(request, "<n1:sObjects>"), false));
+                    break;
+                case "upsert":
+                    respond(exchange, 200, results(operation, request, count(request, "<n1:sObjects>"), true));
+                    break;
+                case "delete":
+                    respond(exchange, 200, results(operation, request, count(request, "<n1:ids>"), false));
+                    break;
+                case "describeSObject":
+                    respond(exchange, 200, describeAccount());
+                    break;
+                case "retrieve":
+                    respond(exchange, 200, retrieve(request));
+                    break;
+                case "getUpdated":
+                    respond(exchange, 200, getUpdated(request));
+                    break;
+                case "getDeleted":
+                    respond(exchange, 200, getDeleted(request));
+                    break;
+                case "getServerTimestamp":
+                    String timestamp = serverTimestamp == null ? Instant.now().toString() : serverTimestamp;
+                    respond(exchange, 200, envelope("<getServerTimestampResponse><result><timestamp>" + timestamp
+                            + "</timestamp></result></getServerTimestampResponse>"));
+                    break;
+                default:
+                    respond(exchange, 500, fault("INVALID_OPERATION", "Mock does not support " + operation));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            leave(exchange);
+            left.remove(exchange);
+            exchange.close();
+        }
+    }
+
+    /**
+     * Counts the exchange out of the calls in flight, once
+     */
+    private void leave(HttpExchange exchange) {
+        if (left.add(exchange)) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private int batchSize(String request) {
+        Matcher matcher = BATCH_SIZE.matcher(request);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : batchSize;
+    }
+
+    private byte[] login() {
+        return envelope("<loginResponse><result><metadataServerUrl>" + getLoginUrl() + "</metadataServerUrl>"
+                + "<passwordExpired>false</passwordExpired><sandbox>false</sandbox>"
+                + "<serverUrl>" + getLoginUrl() + "/00Dmock</serverUrl><sessionId>" + SESSION_ID + "</sessionId>"
+                + "<userId>005mock</userId><userInfo><sessionSecondsValid>" + sessionSecondsValid + "</sessionSecondsValid>"
+                + "<userName>mock@example.com</userName></userInfo></result></loginResponse>");
+    }
+
+    /**
+     * Row n was created n hours after FIRST_CREATED_DATE, queries on CreatedDate ranges only return the rows in them
+     * @return first row and the row after the last one
+     */
+    private int[] rowRange(String request) {
+        int rows = queryRows;
+        Matcher order = CREATED_DATE_ORDER.matcher(request);
+        if (order.find()) {
+            return "ASC".equals(order.group(1)) ? new int[] {0, Math.min(1, rows)} : new int[] {Math.max(0, rows - 1), rows};
+        }
+        Matcher range = CREATED_DATE_RANGE.matcher(request);
+        if (range.find()) {
+            return new int[] {firstRowCreatedFrom(range.group(1), rows), firstRowCreatedFrom(range.group(2), rows)};
+        }
+        return new int[] {0, rows};
+    }
+
+    private static int firstRowCreatedFrom(String dateTime, int rows) {
+        long seconds = Instant.parse(dateTime).getEpochSecond() - FIRST_CREATED_DATE.getEpochSecond();
+        return (int) Math.max(0, Math.min(rows, Math.floorDiv(seconds + 3599, 3600)));
+    }
+
+    private byte[] queryBatch(String operation, int first, int offset, int size, int rows) {
+        String key = operation + ":" + first + ":" + offset + ":" + size + ":" + rows;
+        byte[] body = renderedBatches.computeIfAbsent(key,
+                ignored -> queryResultXml(operation, first, offset, size, rows).getBytes(StandardCharsets.UTF_8));
+        // Only the envelope is rendered per call, so that large batches cost the server next to nothing
+        byte[] start = String.format(ENVELOPE_START, apiRequests.incrementAndGet()).getBytes(StandardCharsets.UTF_8);
+        byte[] end = ENVELOPE_END.getBytes(StandardCharsets.UTF_8);
+        byte[] response = Arrays.copyOf(start, start.length + body.length + end.length);
+        System.arraycopy(body, 0, response, start.length, body.length);
+        System.arraycopy(end, 0, response, start.length + body.length, end.length);
+        return response;
+    }
+
+    /**
+     * @return a complete query response holding all rows in one batch, for benchmarks that parse without HTTP
+     */
+    public static byte[] queryResponse(int rows) {
+        return (String.format(ENVELOPE_START, 1) + queryResultXml("query", 0, 0, rows, rows) + ENVELOPE_END)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String queryResultXml(String operation, int first, int offset, int size, int rows) {
+        int end = Math.min(rows, offset + size);
+        boolean done = end >= rows;
+        StringBuilder xml = new StringBuilder(256 + (end - offset) * 256);
+        xml.append('<').append(operation).append("Response><result xsi:type=\"QueryResult\"><done>").append(done)
+                .append("</done>");
+        if (done) {
+            xml.append("<queryLocator xsi:nil=\"true\"/>");
+        } else {
+            xml.append("<queryLocator>locator-").append(end).append('-').append(first).append('-').append(rows)
+                    .append("</queryLocator>");
+        }
+        for (int row = offset; row < end; row++) {
+            appendRecord(xml, "records", row);
+        }
+        xml.append("<size>").append(rows - first).append("</size></result></").append(operation).append("Response>");
+        return xml.toString();
+    }
+
+    /**
+     * Describes the fields of the rows queries return, whatever type was asked for
+     */
+    private byte[] describeAccount() {
+        StringBuilder xml = new StringBuilder("<describeSObjectResponse><result>"
+                + "<childRelationships><field>AccountId</field><relationshipName>Contacts</relationshipName>"
+                + "</childRelationships>");
+        String[][] fields = {
+                {"Id", "id", "tns:ID"},
+                {"Name", "string", "xsd:string"},
+                {"NumberOfEmployees", "int", "xsd:int"},
+                {"AnnualRevenue", "currency", "xsd:double"},
+                {"Industry", "picklist", "xsd:string"},
+                {"CreatedDate", "datetime", "xsd:dateTime"},
+                {"LastModifiedDate", "datetime", "xsd:dateTime"},
+                {"SLAExpirationDate__c", "date", "xsd:date"},
+        };
+        for (String[] field : fields) {
+            xml.append("<fields><createable>").append(!"id".equals(field[1])).append("</createable><name>")
+                    .append(field[0]).append("</name><nillable>true</nillable>");
+            if ("picklist".equals(field[1])) {
+                xml.append("<picklistValues><active>true</active><label>Energy</label><value>Energy</value>"
+                        + "</picklistValues>");
+            }
+            xml.append("<soapType>").append(field[2]).append("</soapType><type>").append(field[1])
+                    .append("</type><updateable>").append(!"id".equals(field[1])).append("</updateable></fields>");
+        }
+        xml.append("<label>Account</label><name>Account</name></result></describeSObjectResponse>");
+        return envelope(xml.toString());
+    }
+
+    private static void appendRecord(StringBuilder xml, String element, int row) {
+        String id = String.format("001%012dAAA", row);
+        xml.append('<').append(element).append(" xsi:type=\"sf:sObject\"><sf:type>Account</sf:type><sf:Id>").append(id)
+                .append("</sf:Id><sf:Id>").append(id).append("</sf:Id><sf:Name>Account &amp; Co ").append(row)
+                .append("</sf:Name><sf:NumberOfEmployees>").append(row % 1000)
+                .append("</sf:NumberOfEmployees><sf:Industry>").append(row % 2 == 0 ? "Energy" : "Banking")
+                .append("</sf:Industry><sf:CreatedDate>").append(FIRST_CREATED_DATE.plusSeconds(3600L * row))
+                .append("</sf:CreatedDate><sf:LastModifiedDate>2018-05-01T10:15:30.000Z</sf:LastModifiedDate></")
+                .append(element).append('>');
+    }
+
+    /**
+     * Rows that exist are those of the query results, other ids come back as nil
+     */
+    private byte[] retrieve(String request) {
+        StringBuilder xml = new StringBuilder("<retrieveResponse>");
+        Matcher ids = ROW_ID.matcher(request);
+        while (ids.find()) {
+            int row = Integer.parseInt(ids.group(1));
+            if (row < queryRows) {
+                appendRecord(xml, "result", row);
+            } else {
+                xml.append("<result xsi:nil=\"true\"/>");
+            }
+        }
+        return envelope(xml.append("</retrieveResponse>").toString());
+    }
+
+    private byte[] getUpdated(String request) {
+        StringBuilder xml = new StringBuilder("<getUpdatedResponse><result>");
+        for (int row = 0; row < updatedRows; row++) {
+            xml.append("<ids>").append(String.format("001%012dAAA", row)).append("</ids>");
+        }
+        xml.append("<ids>").append(String.format("001%012dAAA", queryRows)).append("</ids>");
+        xml.append("<latestDateCovered>").append(latestDateCovered(request)).append("</latestDateCovered>");
+        return envelope(xml.append("</result></getUpdatedResponse>").toString());
+    }
+
+    private byte[] getDeleted(String request) {
+        StringBuilder xml = new StringBuilder("<getDeletedResponse><result>");
+        for (int row = 0; row < deletedRows; row++) {
+            xml.append("<deletedRecords><deletedDate>2018-05-01T10:15:30.000Z</deletedDate><id>")
+                    .append(String.format("001%012dAAA", queryRows + 1 + row)).append("</id></deletedRecords>");
+        }
+        xml.append("<earliestDateAvailable>2018-04-01T00:00:00.000Z</earliestDateAvailable>");
+        xml.append("<latestDateCovered>").append(latestDateCovered(request)).append("</latestDateCovered>");
+        return envelope(xml.append("</result></getDeletedResponse>").toString());
+    }
+
+    /**
+     * @return end date of the request rounded down to the minute, as Salesforce does
+     */
+    private static String latestDateCovered(String request) {
+        Matcher endDate = END_DATE.matcher(request);
+        return endDate.find() ? endDate.group(1) + ":00.000Z" : "";
+    }
+
+    /**
+     * Results carry the ids of the request for update and delete, made up ids for create and upsert
+     */
+    private byte[] results(String operation, String request, int count, boolean upsert) {
+        Matcher ids = RECORD_ID.matcher(request);
+        StringBuilder xml = new StringBuilder();
+        xml.append('<').append(operation).append("Response>");
+        for (int i = 0; i < count; i++) {
+            xml.append("<result>");
+            if (upsert) {
+                xml.append("<created>true</created>");
+            }
+            String id = ids.find() ? ids.group(1) : String.format("001%012dAAA", i);
+            xml.append("<id>").append(id).append("</id><success>true</success></result>");
+        }
+        xml.append("</").append(operation).append("Response>");
+        return envelope(xml.toString());
+    }
+
+    private byte[] fault(String code, String message) {
+        return envelope("<soapenv:Fault><faultcode>sf:" + code + "</faultcode><faultstring>" + code + ": " + message
+                + "</faultstring></soapenv:Fault>");
+    }
+
+    private byte[] envelope(String body) {
+        return (String.format(ENVELOPE_START, apiRequests.incrementAndGet()) + body + ENVELOPE_END)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int count(String text, String token) {
+        int count = 0;
+        for (int index = text.indexOf(token); index >= 0; index = text.indexOf(token, index + token.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Ends the call's turn in {@link #getMaxConcurrentCalls()} before the body goes out: the client can start its
+     * next call as soon as it has read this one, before the handler thread gets back from writing it
+     */
+    private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        leave(exchange);
+        exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = inputStream.read(buffer); read >= 0; read = inputStream.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
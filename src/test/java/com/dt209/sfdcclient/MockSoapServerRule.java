@@ -0,0 +1,41 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+
+import org.junit.rules.ExternalResource;
+
+/**
+ * Starts a {@link MockSoapServer} with a transport and a client logging in to it before each test, and closes
+ * all three after it
+ */
+public class MockSoapServerRule extends ExternalResource {
+    private MockSoapServer server;
+    private SfdcTransport transport;
+    private SfdcClient client;
+
+    @Override
+    protected void before() throws IOException {
+        server = new MockSoapServer();
+        transport = new SfdcTransport();
+        client = new SfdcClient(server.getLoginUrl(), "user", "password", "token", transport);
+    }
+
+    @Override
+    protected void after() {
+        client.close();
+        transport.close();
+        server.close();
+    }
+
+    public MockSoapServer getServer() {
+        return server;
+    }
+
+    public SfdcTransport getTransport() {
+        return transport;
+    }
+
+    public SfdcClient getClient() {
+        return client;
+    }
+}
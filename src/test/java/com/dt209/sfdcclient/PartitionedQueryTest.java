@@ -0,0 +1,124 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Splits queries against {@link MockSoapServer}, which creates one row per hour and filters on CreatedDate ranges
+ */
+public class PartitionedQueryTest {
+    @Rule
+    public final MockSoapServerRule mock = new MockSoapServerRule();
+
+    private MockSoapServer server;
+    private SfdcTransport transport;
+    private SfdcClient sfdcClient;
+
+    @Before
+    public void setUp() {
+        server = mock.getServer().setQueryRows(1000).setBatchSize(100);
+        transport = mock.getTransport();
+        sfdcClient = mock.getClient();
+    }
+
+    @Test
+    public void allRowsOnceTest() throws IOException {
+        QueryOptions options = new QueryOptions().parallelism(3).partitions(8);
+        Set<String> ids = new HashSet<>();
+        long count;
+        PartitionedQuery query = sfdcClient.queryPartitioned("Account", Arrays.asList("Id", "Name"), "Name != null", options);
+        assertEquals(8, query.getPartitions().size());
+        assertTrue(query.getPartitions().get(0), query.getPartitions().get(0).startsWith(
+                "SELECT Id,Name FROM Account WHERE (Name != null) AND CreatedDate >= 2018-01-01T00:00:00Z AND CreatedDate < "));
+        try (Stream<Map<String, String>> rows = query.stream()) {
+            count = rows.peek(row -> ids.add(row.get("Id"))).count();
+        }
+        assertEquals(1000, count);
+        assertEquals(1000, ids.size());
+        // Two probes, then one query per range followed by queryMore for the rest of its rows
+        assertEquals(10, server.getCalls("query"));
+        assertTrue(server.getCalls("queryMore") >= 2);
+    }
+
+    @Test
+    public void noRowsTest() throws IOException {
+        server.setQueryRows(0);
+        try (PartitionedQuery query = sfdcClient.queryPartitioned("Account", Arrays.asList("Id"), null,
+                new QueryOptions().includeDeleted(true))) {
+            assertFalse(query.hasNext());
+            assertTrue(query.getPartitions().isEmpty());
+        }
+        assertEquals(2, server.getCalls("queryAll"));
+    }
+
+    @Test
+    public void faultStopsQueryTest() throws IOException {
+        server.failAlways("queryMore", "QUERY_TIMEOUT");
+        try (PartitionedQuery query = sfdcClient.queryPartitioned("Account", Arrays.asList("Id"), null,
+                new QueryOptions().parallelism(2))) {
+            while (query.hasNext()) {
+                query.next();
+            }
+            fail("Fault of a range should end the query");
+        } catch (UncheckedIOException e) {
+            assertEquals("QUERY_TIMEOUT", ((SfdcFaultException) e.getCause()).getFaultCode());
+        }
+    }
+
+    /**
+     * A reader that fails with an Error must still tell the caller it is done
+     */
+    @Test
+    public void errorStopsQueryTest() throws IOException {
+        try (SfdcClient failing = new SfdcClient(server.getLoginUrl(), "user", "password", "token", transport) {
+            @Override
+            QueryBatch queryMoreBatch(String queryLocator, QueryOptions options, RecordHandler handler) {
+                throw new AssertionError("Injected error");
+            }
+        }; PartitionedQuery query = failing.queryPartitioned("Account", Arrays.asList("Id"), null,
+                new QueryOptions().parallelism(2))) {
+            while (query.hasNext()) {
+                query.next();
+            }
+            fail("Error of a range should end the query");
+        } catch (UncheckedIOException e) {
+            assertEquals("Injected error", e.getCause().getCause().getMessage());
+        }
+    }
+
+    /**
+     * A query dropped without closing it must not keep its readers waiting forever
+     */
+    @Test
+    public void idleReadersGiveUpTest() throws Exception {
+        PartitionedQuery query = sfdcClient.queryPartitioned("Account", Arrays.asList("Id"), null,
+                new QueryOptions().parallelism(2).partitions(8).maxIdleMillis(300));
+        assertTrue(query.hasNext());
+        Thread.sleep(1500);
+        int calls = server.getCalls("query") + server.getCalls("queryMore");
+        Thread.sleep(500);
+        assertEquals(calls, server.getCalls("query") + server.getCalls("queryMore"));
+        try {
+            while (query.hasNext()) {
+                query.next();
+            }
+            fail("Rows dropped by the readers should fail the query");
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("gave up"));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class QueryCacheTest {
+
+    private static List<Map<String, String>> rows(int count, String idPrefix) {
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(Collections.singletonMap("Id", idPrefix + i));
+        }
+        return rows;
+    }
+
+    @Test
+    public void normalizeTest() {
+        assertEquals("SELECT Id FROM Account WHERE Name = 'a  b'",
+                QueryCache.normalize("  SELECT  Id\n FROM\tAccount WHERE Name = 'a  b' "));
+        assertEquals("account", QueryCache.objectTypeOf("SELECT Id, (SELECT Id FROM Contacts) FROM Account WHERE Name = ' from x'"));
+        assertNull(QueryCache.objectTypeOf("SELECT COUNT()"));
+    }
+
+    @Test
+    public void hitMissAndInvalidateTest() throws Exception {
+        QueryCache cache = new QueryCache(1000, 60_000);
+        AtomicInteger loads = new AtomicInteger();
+        QueryCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            return rows(3, "012");
+        };
+
+        cache.get("SELECT Id FROM RecordType", loader);
+        cache.get("SELECT  Id FROM RecordType ", loader);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        cache.invalidate("recordtype");
+        cache.get("SELECT Id FROM RecordType", loader);
+        assertEquals(2, loads.get());
+
+        // The type of an ID is learned from the cached rows
+        cache.invalidateById("0120000000001");
+        cache.get("SELECT Id FROM RecordType", loader);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void ttlAndEvictionTest() throws Exception {
+        QueryCache cache = new QueryCache(10, 60_000).setTtl("User", 0);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("SELECT Id FROM User", () -> rows(loads.incrementAndGet(), "005"));
+        cache.get("SELECT Id FROM User", () -> rows(loads.incrementAndGet(), "005"));
+        assertEquals("TTL of 0 must not cache", 2, loads.get());
+
+        cache.get("SELECT Id FROM Account", () -> rows(6, "001"));
+        cache.get("SELECT Id FROM Contact", () -> rows(6, "003"));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(6, cache.getCachedRows());
+    }
+
+    @Test
+    public void concurrentMissesLoadOnceTest() throws Exception {
+        QueryCache cache = new QueryCache(1000, 60_000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<Map<String, String>>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> cache.get("SELECT Id FROM Account", () -> {
+                    loads.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return rows(2, "001");
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<List<Map<String, String>>> future : futures) {
+                assertEquals(2, future.get(5, TimeUnit.SECONDS).size());
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Loads against {@link MockSoapServer}, where the records of the first queryRows IDs exist
+ */
+public class RecordLoaderTest {
+    @Rule
+    public final MockSoapServerRule mock = new MockSoapServerRule();
+
+    private MockSoapServer server;
+    private SfdcClient sfdcClient;
+
+    @Before
+    public void setUp() {
+        server = mock.getServer().setQueryRows(50);
+        sfdcClient = mock.getClient();
+    }
+
+    @Test
+    public void concurrentLoadsShareOneCallTest() throws Exception {
+        List<String> fields = Arrays.asList("Id", "Name");
+        List<CompletableFuture<Map<String, String>>> results = new ArrayList<>();
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try (RecordLoader loader = new RecordLoader(sfdcClient, SfdcClient.MAX_RETRIEVE_IDS, 500)) {
+            List<CompletableFuture<CompletableFuture<Map<String, String>>>> queued = new ArrayList<>();
+            for (int i = 0; i < 80; i++) {
+                int row = i % 40; // every record twice
+                queued.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return loader.load("Account", String.format("001%012dAAA", row), fields);
+                }, callers));
+            }
+            start.countDown();
+            for (CompletableFuture<CompletableFuture<Map<String, String>>> future : queued) {
+                results.add(future.get(5, TimeUnit.SECONDS));
+            }
+            // 15 character form of a record already asked for, and an ID that does not exist
+            CompletableFuture<Map<String, String>> shortId = loader.load("Account", "001000000000007", fields);
+            CompletableFuture<Map<String, String>> missing = loader.load("Account", "001000000000099AAA", fields);
+            assertEquals("Account & Co 7", shortId.get(5, TimeUnit.SECONDS).get("Name"));
+            assertNull(missing.get(5, TimeUnit.SECONDS));
+            assertEquals(82, loader.getLoadCount());
+            assertEquals(41, loader.getRetrievedIdCount());
+        } finally {
+            callers.shutdown();
+        }
+        for (int i = 0; i < results.size(); i++) {
+            Map<String, String> record = results.get(i).get();
+            assertEquals(String.format("001%012dAAA", i % 40), record.get("Id"));
+        }
+        assertEquals(1, server.getCalls("retrieve"));
+    }
+
+    @Test
+    public void fullBatchAndFaultTest() throws Exception {
+        try (RecordLoader loader = new RecordLoader(sfdcClient, 10, TimeUnit.MINUTES.toMillis(1))) {
+            List<CompletableFuture<Map<String, String>>> results = new ArrayList<>();
+            for (int row = 0; row < 10; row++) {
+                results.add(loader.load("Account", String.format("001%012dAAA", row), Arrays.asList("Name")));
+            }
+            // Sent at maxBatchSize without waiting out the delay
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+            assertEquals(1, loader.getBatchCount());
+
+            // Lookups made after a batch filled up start the next batch, 18 character IDs in any case match
+            List<CompletableFuture<Map<String, String>>> more = new ArrayList<>();
+            for (int row = 10; row < 25; row++) {
+                more.add(loader.load("Account", String.format("001%012daaa", row), Arrays.asList("Name")));
+            }
+            CompletableFuture.allOf(more.subList(0, 10).toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+            assertEquals(2, loader.getBatchCount());
+            assertTrue(more.subList(10, 15).stream().noneMatch(CompletableFuture::isDone));
+            loader.flush();
+            assertEquals("Account & Co 24", more.get(14).get(5, TimeUnit.SECONDS).get("Name"));
+            assertEquals("Account & Co 10", more.get(0).get().get("Name"));
+            assertEquals(3, loader.getBatchCount());
+
+            try {
+                loader.load("Account", "not an id", Arrays.asList("Name")).get();
+                fail("Malformed ID should not be queued");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+
+            server.failAlways("retrieve", "INVALID_FIELD");
+            CompletableFuture<Map<String, String>> first = loader.load("Account", "001000000000001AAA", Arrays.asList("Nope"));
+            CompletableFuture<Map<String, String>> second = loader.load("Account", "001000000000002AAA", Arrays.asList("Nope"));
+            loader.flush();
+            for (CompletableFuture<Map<String, String>> result : Arrays.asList(first, second)) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                    fail("Fault should fail every lookup of the batch");
+                } catch (ExecutionException e) {
+                    assertEquals("INVALID_FIELD", ((SfdcFaultException) e.getCause()).getFaultCode());
+                }
+            }
+        }
+        assertEquals(4, server.getCalls("retrieve"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.dt209.sfdcclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RecordSetTest {
+
+    private static final String RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns=\"urn:partner.soap.sforce.com\""
+            + " xmlns:sf=\"urn:sobject.partner.soap.sforce.com\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+            + "<soapenv:Body><queryResponse><result xsi:type=\"QueryResult\"><done>true</done><queryLocator xsi:nil=\"true\"/>"
+            + "<records xsi:type=\"sf:sObject\"><sf:type>Account</sf:type><sf:Id>001A</sf:Id><sf:Id>001A</sf:Id>"
+            + "<sf:Name>A &amp; B</sf:Name><sf:NumberOfEmployees>12</sf:NumberOfEmployees><sf:IsDeleted>false</sf:IsDeleted></records>"
+            + "<records xsi:type=\"sf:sObject\"><sf:type>Account</sf:type><sf:Id>001B</sf:Id><sf:Id>001B</sf:Id>"
+            + "<sf:Name xsi:nil=\"true\"/><sf:NumberOfEmployees>7</sf:NumberOfEmployees><sf:IsDeleted>true</sf:IsDeleted></records>"
+            + "<size>2</size></result></queryResponse></soapenv:Body></soapenv:Envelope>";
+
+    private static InputStream response() {
+        return new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The compact rows must read the same as the HashMap rows of query(String)
+     */
+    @Test
+    public void sameAsMapRowsTest() throws IOException {
+        SoapRequest request = SoapRequest.ofXml("query", "<n1:query/>");
+        List<Map<String, String>> maps = new ArrayList<>();
+        SoapResponseParser.readQueryResult(response(), maps::add, request);
+        RecordSet recordSet = new RecordSet();
+        SoapResponseParser.readQueryResult(response(), recordSet.sink(), request);
+
+        assertEquals(maps.size(), recordSet.size());
+        for (int i = 0; i < maps.size(); i++) {
+            assertEquals(maps.get(i), recordSet.get(i));
+        }
+        assertEquals(5, recordSet.getSchema().size());
+    }
+
+    @Test
+    public void typedAccessorsAndSharedValuesTest() throws IOException {
+        RecordSet recordSet = new RecordSet();
+        SoapResponseParser.readQueryResult(response(), recordSet.sink(), SoapRequest.ofXml("query", "<n1:query/>"));
+
+        Record first = recordSet.get(0);
+        Record second = recordSet.get(1);
+        assertEquals("A & B", first.getString("Name"));
+        assertNull(second.getString("Name"));
+        assertEquals(Integer.valueOf(12), first.getInteger("NumberOfEmployees"));
+        assertEquals(Long.valueOf(7), second.getLong("NumberOfEmployees"));
+        assertEquals(Boolean.TRUE, second.getBoolean("IsDeleted"));
+        assertNull(first.get("NoSuchField"));
+        assertSame(first.get("type"), second.get("type"));
+    }
+
+    /**
+     * The second record repeats the columns of the first, only the duplicate Id needs a lookup
+     */
+    @Test
+    public void expectedColumnAfterDuplicateIdTest() throws IOException {
+        SoapRequest request = SoapRequest.ofXml("query", "<n1:query/>");
+        RecordSet recordSet = new RecordSet();
+        SoapResponseParser.readQueryResult(response(), recordSet.sink(), request);
+        assertEquals(5, recordSet.getSchema().getExpectedHits());
+
+        try (SpillingRecordSet spilling = new SpillingRecordSet(0)) {
+            SoapResponseParser.readQueryResult(response(), spilling.sink(), request);
+            assertEquals(5, spilling.getSchema().getExpectedHits());
+            assertEquals(recordSet, spilling);
+        }
+    }
+}
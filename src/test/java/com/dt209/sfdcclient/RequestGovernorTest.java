@@ -0,0 +1,83 @@
+package com.dt209.sfdcclient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestGovernorTest {
+    private static final SfdcFaultException OVERLOAD =
+            SfdcFaultException.of(SfdcServerUnavailableException.FAULT_CODE, "Server unavailable", "test");
+
+    @Test
+    public void inFlightLimitTest() throws Exception {
+        RequestGovernor governor = RequestGovernor.builder().inFlight(2, 16).build();
+        List<RequestGovernor.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            permits.add(governor.acquire());
+        }
+        assertEquals(16, governor.getInFlight());
+
+        // All calls in flight at the time of the overload halve the limit once between them
+        permits.forEach(permit -> permit.release(OVERLOAD));
+        assertEquals(8, governor.getInFlightLimit());
+        assertEquals(0, governor.getInFlight());
+
+        governor.acquire().release(OVERLOAD);
+        governor.acquire().release(OVERLOAD);
+        governor.acquire().release(OVERLOAD);
+        assertEquals(2, governor.getInFlightLimit());
+
+        for (int i = 0; i < 10; i++) {
+            governor.acquire().release(null);
+        }
+        assertTrue(governor.getInFlightLimit() > 2);
+    }
+
+    @Test
+    public void queuedAcquireTest() throws Exception {
+        RequestGovernor governor = RequestGovernor.builder().inFlight(1, 1).build();
+        RequestGovernor.Permit first = governor.acquireAsync().get();
+        CompletableFuture<RequestGovernor.Permit> cancelled = governor.acquireAsync();
+        CompletableFuture<RequestGovernor.Permit> waiting = governor.acquireAsync();
+        assertFalse(cancelled.isDone());
+        assertTrue(cancelled.cancel(false));
+
+        // The cancelled waiter is skipped, its place goes to the next one
+        first.release(null);
+        assertTrue(waiting.isDone());
+        assertEquals(1, governor.getInFlight());
+        waiting.get().abandon();
+        assertEquals(0, governor.getInFlight());
+    }
+
+    @Test
+    public void retryTest() {
+        RequestGovernor governor = RequestGovernor.builder().maxRetries(2).backoff(100, 250).build();
+        assertTrue(governor.shouldRetry(OVERLOAD, 1));
+        assertFalse(governor.shouldRetry(OVERLOAD, 2));
+        assertFalse(governor.shouldRetry(SfdcFaultException.of("INVALID_FIELD", "No such column", "test"), 0));
+        assertTrue(governor.shouldRetry(SfdcFaultException.of(SfdcRequestLimitException.FAULT_CODE,
+                "ConcurrentPerOrgLongTxn Limit exceeded", "test"), 0));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(governor.backoffMillis(0) <= 100);
+            assertTrue(governor.backoffMillis(5) <= 250);
+        }
+    }
+
+    @Test
+    public void tokenBucketTest() throws Exception {
+        RequestGovernor governor = RequestGovernor.builder().permitsPerSecond(50, 1).build();
+        long start = System.nanoTime();
+        for (int i = 0; i < 11; i++) {
+            governor.acquire().release(null);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue("took " + elapsedMillis + "ms", elapsedMillis >= 180);
+    }
+}
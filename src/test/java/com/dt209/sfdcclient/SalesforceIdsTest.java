@@ -0,0 +1,20 @@
+package com.dt209.sfdcclient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SalesforceIdsTest {
+    @Test
+    public void fullIdTest() {
+        assertEquals("001000000000001AAA", SalesforceIds.toFullId("001000000000001"));
+        assertEquals("0013000000ABcdEAAT", SalesforceIds.toFullId("0013000000ABcdE"));
+        assertEquals("0013000000ABcdEAAT", SalesforceIds.toFullId("0013000000ABcdEAAT"));
+        assertEquals("0013000000ABcdEAAT", SalesforceIds.toFullId("0013000000abcdeaat"));
+        assertEquals("0013000000ABcdEAAT", SalesforceIds.toFullId("0013000000ABCDEAAT"));
+        assertNull(SalesforceIds.toFullId("0013000000ABcdEAA9"));
+        assertNull(SalesforceIds.toFullId("001-00000000001"));
+        assertNull(SalesforceIds.toFullId("0010000"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class SessionManagerTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Threads that all see an expired session at the same time must share a single login
+     */
+    @Test
+    public void concurrentRefreshLogsInOnceTest() throws Exception {
+        AtomicInteger logins = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        SessionManager sessionManager = new SessionManager(() -> {
+            logins.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new SfdcSession("session" + logins.get(), "https://example.invalid", System.currentTimeMillis() + 60_000);
+        }, executor);
+
+        List<Future<SfdcSession>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(executor.submit(() -> sessionManager.refresh(null)));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        SfdcSession first = futures.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<SfdcSession> future : futures) {
+            assertSame(first, future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, logins.get());
+    }
+
+    /**
+     * A caller holding a session that was already replaced gets the replacement without another login
+     */
+    @Test
+    public void staleRefreshReusesNewSessionTest() throws Exception {
+        AtomicInteger logins = new AtomicInteger();
+        SessionManager sessionManager = new SessionManager(() ->
+                new SfdcSession("session" + logins.incrementAndGet(), "https://example.invalid",
+                        System.currentTimeMillis() + 3_600_000), executor);
+
+        SfdcSession first = sessionManager.get();
+        SfdcSession second = sessionManager.refresh(first);
+        assertNotSame(first, second);
+        assertSame(second, sessionManager.refresh(first));
+        assertSame(second, sessionManager.get());
+        assertEquals(2, logins.get());
+    }
+}
@@ -0,0 +1,220 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The non blocking calls against {@link MockSoapServer}
+ */
+public class SfdcClientAsyncTest {
+    @Rule
+    public final MockSoapServerRule mock = new MockSoapServerRule();
+
+    private MockSoapServer server;
+    private SfdcClient sfdcClient;
+
+    @Before
+    public void setUp() {
+        server = mock.getServer();
+        sfdcClient = mock.getClient();
+    }
+
+    private static Map<String, Object> account(int i) {
+        Map<String, Object> account = new HashMap<>();
+        account.put("id", String.format("001%012dAAA", i));
+        account.put("Name", "Account " + i);
+        return account;
+    }
+
+    @Test
+    public void completionTest() throws Exception {
+        List<CompletableFuture<SaveResult>> updates = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            updates.add(sfdcClient.updateAsync("Account", account(i)));
+        }
+        CompletableFuture<List<Map<String, String>>> rows = sfdcClient.queryAsync("SELECT Id, Name FROM Account");
+        CompletableFuture<UpsertResult> upserted = sfdcClient.upsertAsync("Id", "Account", account(1));
+        CompletableFuture<DeleteResult> deleted = sfdcClient.deleteAsync("001000000000001AAA");
+
+        for (CompletableFuture<SaveResult> update : updates) {
+            assertTrue(update.get(10, TimeUnit.SECONDS).isSuccess());
+        }
+        assertEquals(10, rows.get(10, TimeUnit.SECONDS).size());
+        assertTrue(upserted.get(10, TimeUnit.SECONDS).isSuccess());
+        assertTrue(deleted.get(10, TimeUnit.SECONDS).isSuccess());
+        // Concurrent calls shared one login
+        assertEquals(1, server.getCalls("login"));
+        assertEquals(20, server.getCalls("update"));
+    }
+
+    @Test
+    public void faultTest() throws Exception {
+        server.failAlways("update", "ENTITY_IS_DELETED");
+        try {
+            sfdcClient.updateAsync("Account", account(1)).get(10, TimeUnit.SECONDS);
+            fail("Expected a fault");
+        } catch (ExecutionException e) {
+            assertEquals("ENTITY_IS_DELETED", ((SfdcFaultException) e.getCause()).getFaultCode());
+        }
+        Map<String, Object> noId = new HashMap<>();
+        noId.put("Name", "No id");
+        try {
+            sfdcClient.updateAsync("Account", noId).get(10, TimeUnit.SECONDS);
+            fail("Expected a failed future for a record without id");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(1, server.getCalls("update"));
+    }
+
+    @Test
+    public void cancellationTest() throws Exception {
+        CompletableFuture<SfdcCallEvent> update = new CompletableFuture<>();
+        sfdcClient.setListener(new SfdcListener() {
+            @Override
+            public void onCall(SfdcCallEvent event) {
+                if ("update".equals(event.getOperation())) {
+                    update.complete(event);
+                }
+            }
+        });
+        sfdcClient.getSession();
+        server.setLatencyMillis(2000);
+        CompletableFuture<SaveResult> result = sfdcClient.updateAsync("Account", account(1));
+        Thread.sleep(100);
+        assertTrue(result.cancel(true));
+        try {
+            result.get();
+            fail("Expected the future to be cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+        // The HTTP call is cancelled too, it fails long before the server would answer
+        assertTrue(update.get(1, TimeUnit.SECONDS).getError() instanceof IOException);
+    }
+
+    @Test
+    public void chunkedUpdateAllConcurrencyTest() throws Exception {
+        List<Map<String, Object>> accounts = new ArrayList<>();
+        for (int i = 0; i < 5 * SfdcClient.MAX_RECORDS_PER_CALL; i++) {
+            accounts.add(account(i));
+        }
+        sfdcClient.getSession();
+        server.setLatencyMillis(200);
+        List<SaveResult> results = sfdcClient.updateAll("Account", accounts, 5);
+        assertEquals(accounts.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(accounts.get(i).get("id"), results.get(i).getId());
+        }
+        assertEquals(5, server.getCalls("update"));
+        assertEquals(5, server.getMaxConcurrentCalls());
+
+        sfdcClient.updateAll("Account", accounts, 2);
+        assertEquals(5, server.getMaxConcurrentCalls());
+    }
+
+    /**
+     * A failed chunk must not hide the chunks that were saved before it
+     */
+    @Test
+    public void chunkedUpdateAllPartialFailureTest() throws Exception {
+        List<Map<String, Object>> accounts = new ArrayList<>();
+        for (int i = 0; i < 5 * SfdcClient.MAX_RECORDS_PER_CALL; i++) {
+            accounts.add(account(i));
+        }
+        sfdcClient.getSession();
+        server.failCall("update", 1, "UNKNOWN_EXCEPTION");
+        try {
+            sfdcClient.updateAll("Account", accounts, 1);
+            fail("The first chunk failed");
+        } catch (SfdcFaultException e) {
+            assertEquals("UNKNOWN_EXCEPTION", e.getFaultCode());
+        }
+        assertEquals(1, server.getCalls("update"));
+
+        server.failCall("update", 3, "UNKNOWN_EXCEPTION");
+        try {
+            sfdcClient.updateAll("Account", accounts, 1);
+            fail("The second chunk failed");
+        } catch (SfdcPartialWriteException e) {
+            assertEquals("UNKNOWN_EXCEPTION", ((SfdcFaultException) e.getCause()).getFaultCode());
+            assertSavedChunks(accounts, e.getResults());
+            assertEquals(SfdcClient.MAX_RECORDS_PER_CALL, e.getResults().stream().filter(Objects::nonNull).count());
+        }
+        assertEquals(3, server.getCalls("update"));
+
+        server.setLatencyMillis(200);
+        server.failCall("update", 5, "UNKNOWN_EXCEPTION");
+        try {
+            sfdcClient.updateAll("Account", accounts, 2);
+            fail("The second chunk failed");
+        } catch (SfdcPartialWriteException e) {
+            // The other worker's chunk was in flight and is waited for, no further chunks are sent
+            assertSavedChunks(accounts, e.getResults());
+            assertTrue(e.getResults().stream().anyMatch(Objects::nonNull));
+            assertTrue(server.getMaxConcurrentCalls() <= 2);
+        }
+        assertTrue(server.getCalls("update") <= 6);
+    }
+
+    private static void assertSavedChunks(List<Map<String, Object>> accounts, List<? extends SaveResult> results) {
+        assertEquals(accounts.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            SaveResult result = results.get(i);
+            int chunkStart = i - i % SfdcClient.MAX_RECORDS_PER_CALL;
+            assertEquals(result == null, results.get(chunkStart) == null);
+            if (result != null) {
+                assertEquals(accounts.get(i).get("id"), result.getId());
+            }
+        }
+    }
+
+    /**
+     * Calls waiting for a governor permit must not each hold a thread
+     */
+    @Test
+    public void governedFloodTest() throws Exception {
+        sfdcClient.setRequestGovernor(RequestGovernor.builder().inFlight(1, 4).build());
+        sfdcClient.getSession();
+        server.setLatencyMillis(50);
+        int before = clientThreads();
+        List<CompletableFuture<SaveResult>> updates = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            updates.add(sfdcClient.updateAsync("Account", account(i)));
+        }
+        Thread.sleep(200);
+        assertTrue(clientThreads() - before <= 2);
+
+        for (int i = 0; i < updates.size(); i++) {
+            assertEquals(account(i).get("id"), updates.get(i).get(30, TimeUnit.SECONDS).getId());
+        }
+        assertEquals(4, server.getMaxConcurrentCalls());
+        assertEquals(0, sfdcClient.getRequestGovernor().getInFlight());
+    }
+
+    private static int clientThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("sfdcclient-")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
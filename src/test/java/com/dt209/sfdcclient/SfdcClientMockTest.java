@@ -0,0 +1,327 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the client against {@link MockSoapServer}, no Salesforce org needed
+ */
+public class SfdcClientMockTest {
+    @Rule
+    public final MockSoapServerRule mock = new MockSoapServerRule();
+
+    private MockSoapServer server;
+    private SfdcClient sfdcClient;
+
+    @Before
+    public void setUp() {
+        server = mock.getServer();
+        sfdcClient = mock.getClient();
+    }
+
+    private static Map<String, Object> account(int i) {
+        Map<String, Object> account = new HashMap<>();
+        account.put("id", String.format("001%012dAAA", i));
+        account.put("Name", "Account & Co " + i);
+        return account;
+    }
+
+    @Test
+    public void queryFollowsQueryMoreTest() throws IOException {
+        server.setQueryRows(1250).setBatchSize(500);
+        try (QueryCursor cursor = sfdcClient.queryCursor("SELECT Id, Name FROM Account")) {
+            int count = 0;
+            while (cursor.hasNext()) {
+                Map<String, String> row = cursor.next();
+                assertEquals("Account & Co " + count, row.get("Name"));
+                count++;
+            }
+            assertEquals(1250, count);
+            assertEquals(1250, cursor.getTotalSize());
+        }
+        assertEquals(1, server.getCalls("login"));
+        assertEquals(1, server.getCalls("query"));
+        assertEquals(2, server.getCalls("queryMore"));
+        assertEquals(500, sfdcClient.query("SELECT Id FROM Account").size());
+    }
+
+    @Test
+    public void closingCursorCancelsPrefetchTest() throws Exception {
+        server.setQueryRows(1000).setBatchSize(200);
+        CompletableFuture<SfdcCallEvent> queryMore = new CompletableFuture<>();
+        sfdcClient.setListener(new SfdcListener() {
+            @Override
+            public void onCall(SfdcCallEvent event) {
+                if ("queryMore".equals(event.getOperation())) {
+                    queryMore.complete(event);
+                }
+            }
+        });
+        sfdcClient.getSession();
+        server.setLatencyMillis(1000);
+        QueryCursor cursor = sfdcClient.queryCursor("SELECT Id, Name FROM Account");
+        cursor.close();
+        // The prefetched call fails as cancelled long before the server would answer it
+        assertTrue(queryMore.get(500, TimeUnit.MILLISECONDS).getError() instanceof IOException);
+    }
+
+    @Test
+    public void updateAllAndReloginTest() throws IOException {
+        List<Map<String, Object>> accounts = new ArrayList<>();
+        for (int i = 0; i < 450; i++) {
+            accounts.add(account(i));
+        }
+        List<SaveResult> results = sfdcClient.updateAll("Account", accounts, 2);
+        assertEquals(450, results.size());
+        assertTrue(results.stream().allMatch(SaveResult::isSuccess));
+        assertEquals(3, server.getCalls("update"));
+
+        server.expireSession();
+        sfdcClient.update("Account", account(1));
+        assertEquals(2, server.getCalls("login"));
+    }
+
+    /**
+     * Subclasses that override the protected login hook still take part in every login
+     */
+    @Test
+    public void loginHookTest() throws IOException {
+        AtomicInteger logins = new AtomicInteger();
+        try (SfdcClient hooked = new SfdcClient(server.getLoginUrl(), "user", "password", "token", mock.getTransport()) {
+            @Override
+            protected void login() throws IOException {
+                logins.incrementAndGet();
+                super.login();
+            }
+        }) {
+            hooked.update("Account", account(1));
+            server.expireSession();
+            hooked.update("Account", account(2));
+        }
+        assertEquals(2, logins.get());
+        assertEquals(2, server.getCalls("login"));
+    }
+
+    @Test
+    public void faultTest() throws Exception {
+        server.failNext("REQUEST_LIMIT_EXCEEDED", 1);
+        try {
+            sfdcClient.delete("001000000000000AAA");
+            fail("Expected a fault");
+        } catch (SfdcFaultException e) {
+            assertEquals("REQUEST_LIMIT_EXCEEDED", e.getFaultCode());
+        }
+        assertTrue(sfdcClient.deleteAsync("001000000000000AAA").get(10, TimeUnit.SECONDS).isSuccess());
+    }
+
+    @Test
+    public void writeBehindTest() throws Exception {
+        try (WriteBehindBuffer buffer = new WriteBehindBuffer(sfdcClient, 1000, 60_000)) {
+            for (int i = 0; i < 300; i++) {
+                buffer.update("Account", account(i % 100));
+            }
+            assertEquals(100, buffer.getPendingCount());
+            buffer.flush();
+        }
+        assertEquals(1, server.getCalls("update"));
+    }
+
+    @Test
+    public void writeBehindMergesIdFormsTest() throws Exception {
+        try (WriteBehindBuffer buffer = new WriteBehindBuffer(sfdcClient, 2, 60_000)) {
+            Map<String, Object> shortId = account(1);
+            shortId.put("id", "001000000000001");
+            CompletableFuture<SaveResult> first = buffer.update("Account", shortId);
+            Map<String, Object> contact = new HashMap<>();
+            contact.put("id", "003000000000001AAA");
+            buffer.update("Contact", contact);
+            Map<String, Object> fullId = account(1);
+            fullId.put("Industry", "Energy");
+            CompletableFuture<SaveResult> second = buffer.update("Account", fullId);
+            assertEquals(2, buffer.getPendingCount());
+
+            // Reaching the threshold for Account does not send the Contact
+            buffer.update("Account", account(2)).get(10, TimeUnit.SECONDS);
+            assertEquals(1, server.getCalls("update"));
+            assertEquals(1, buffer.getPendingCount());
+            assertTrue(first.isDone());
+            assertSame(first.get(), second.get());
+            String request = server.getLastRequest("update");
+            assertTrue(request.contains("<Industry>Energy</Industry>"));
+            assertEquals(2, request.split("<n1:sObjects").length - 1);
+        }
+        assertEquals(2, server.getCalls("update"));
+    }
+
+    @Test
+    public void writeBehindPartialFailureTest() throws Exception {
+        sfdcClient.setListener(new SfdcListener() {
+            @Override
+            public void onCall(SfdcCallEvent event) {
+                if ("update".equals(event.getOperation())) {
+                    server.failAlways("update", "UNABLE_TO_LOCK_ROW");
+                }
+            }
+        });
+        List<CompletableFuture<SaveResult>> results = new ArrayList<>();
+        WriteBehindBuffer buffer = new WriteBehindBuffer(sfdcClient, 1000, 60_000);
+        for (int i = 0; i < 300; i++) {
+            results.add(buffer.update("Account", account(i)));
+        }
+        buffer.close();
+        buffer.flush();
+
+        assertEquals(2, server.getCalls("update"));
+        for (int i = 0; i < 300; i++) {
+            CompletableFuture<SaveResult> result = results.get(i);
+            if (i < SfdcClient.MAX_RECORDS_PER_CALL) {
+                assertEquals(String.format("001%012dAAA", i), result.get().getId());
+            } else {
+                try {
+                    result.get();
+                    fail("Expected the second call to fail");
+                } catch (ExecutionException e) {
+                    assertEquals("UNABLE_TO_LOCK_ROW", ((SfdcFaultException) e.getCause()).getFaultCode());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void metricsTest() throws Exception {
+        SfdcMetrics metrics = new SfdcMetrics();
+        sfdcClient.setListener(metrics);
+        server.setQueryRows(700).setBatchSize(500);
+
+        assertEquals(700, sfdcClient.queryRecords("SELECT Id FROM Account", new QueryOptions()).size());
+        server.expireSession();
+        sfdcClient.update("Account", account(1));
+        server.failNext("REQUEST_LIMIT_EXCEEDED", 1);
+        try {
+            sfdcClient.updateAsync("Account", account(2)).get(10, TimeUnit.SECONDS);
+            fail("Expected a fault");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SfdcFaultException);
+        }
+
+        assertEquals(2, metrics.getOperation("login").getCallCount());
+        assertEquals(1, metrics.getOperation("query").getCallCount());
+        assertEquals(1, metrics.getOperation("queryMore").getCallCount());
+        SfdcMetrics.Operation update = metrics.getOperation("update");
+        assertEquals(3, update.getCallCount());
+        assertEquals(2, update.getErrorCount());
+        assertTrue(update.getRequestBytes() > 0);
+        assertTrue(metrics.getOperation("query").getResponseBytes() > 500 * 100);
+        assertTrue(metrics.getOperation("query").getLatency().getPercentileNanos(99) > 0);
+
+        assertEquals(1, metrics.getReloginCount());
+        assertEquals(1, metrics.getRetryCount());
+        assertEquals(Long.valueOf(1), metrics.getFaultCounts().get("INVALID_SESSION_ID"));
+        assertEquals(Long.valueOf(1), metrics.getFaultCounts().get("REQUEST_LIMIT_EXCEEDED"));
+        ApiLimit apiRequests = metrics.getApiLimit("API REQUESTS");
+        assertEquals(15000, apiRequests.getLimit());
+        assertTrue(apiRequests.getCurrent() > 0);
+    }
+
+    @Test
+    public void governedRetryTest() throws Exception {
+        RequestGovernor governor = RequestGovernor.builder().backoff(10, 50).build();
+        sfdcClient.setRequestGovernor(governor);
+        SfdcMetrics metrics = new SfdcMetrics();
+        sfdcClient.setListener(metrics);
+
+        server.failNext(SfdcServerUnavailableException.FAULT_CODE, 2);
+        assertEquals(10, sfdcClient.query("SELECT Id FROM Account").size());
+        server.failNext(SfdcRequestLimitException.FAULT_CODE, "ConcurrentPerOrgLongTxn Limit exceeded", 1);
+        assertTrue(sfdcClient.deleteAsync("001000000000000AAA").get(10, TimeUnit.SECONDS).isSuccess());
+        assertEquals(3, metrics.getRetryCount());
+
+        server.failNext(SfdcRequestLimitException.FAULT_CODE, "TotalRequests Limit exceeded.", 1);
+        try {
+            sfdcClient.delete("001000000000000AAA");
+            fail("The daily limit is not retryable");
+        } catch (SfdcRequestLimitException e) {
+            assertTrue(!e.isConcurrentLimit());
+        }
+        assertEquals(3, metrics.getRetryCount());
+        assertEquals(0, governor.getInFlight());
+    }
+
+    @Test
+    public void typedQueryAndWriteTest() throws Exception {
+        sfdcClient.setDescribeCache(new DescribeCache());
+        List<Map<String, Object>> rows = sfdcClient.queryTyped("SELECT Id, Name, NumberOfEmployees, LastModifiedDate FROM Account");
+        assertEquals(10, rows.size());
+        assertEquals(7, rows.get(7).get("NumberOfEmployees"));
+        assertEquals(Instant.parse("2018-05-01T10:15:30Z"), rows.get(7).get("LastModifiedDate"));
+        assertEquals("Account & Co 7", rows.get(7).get("Name"));
+        sfdcClient.queryTyped("SELECT Id FROM Account WHERE Industry = 'Energy'");
+        assertEquals(1, server.getCalls("describeSObject"));
+
+        Map<String, Object> account = account(1);
+        account.put("AnnualRevenue", new BigDecimal("1E+3"));
+        account.put("LastModifiedDate", LocalDate.of(2018, 5, 1));
+        account.put("SLAExpirationDate__c", Instant.parse("2018-05-01T23:30:00Z"));
+        sfdcClient.update("Account", account);
+        String request = server.getLastRequest("update");
+        assertTrue(request.contains("<AnnualRevenue>1000</AnnualRevenue>"));
+        assertTrue(request.contains("<LastModifiedDate>2018-05-01T00:00:00.000Z</LastModifiedDate>"));
+        assertTrue(request.contains("<SLAExpirationDate__c>2018-05-01</SLAExpirationDate__c>"));
+        assertEquals(1, server.getCalls("update"));
+
+        // Rejected while the request is built, nothing reaches Salesforce
+        account.put("Nmae", "Typo");
+        try {
+            sfdcClient.update("Account", account);
+            fail("Unknown fields are rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Nmae"));
+        }
+        account.remove("Nmae");
+        account.put("NumberOfEmployees", Collections.singletonMap("value", 5));
+        try {
+            sfdcClient.update("Account", account);
+            fail("Values that can not be written are not dropped");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("NumberOfEmployees"));
+        }
+        List<Map<String, Object>> accounts = new ArrayList<>();
+        for (int i = 0; i < 3 * SfdcClient.MAX_RECORDS_PER_CALL; i++) {
+            accounts.add(account(i));
+        }
+        accounts.set(2 * SfdcClient.MAX_RECORDS_PER_CALL, account);
+        try {
+            sfdcClient.updateAll("Account", accounts, 2);
+            fail("Values that can not be written are not dropped");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("NumberOfEmployees"));
+        }
+        try {
+            sfdcClient.updateAsync("Account", account).get(10, TimeUnit.SECONDS);
+            fail("Values that can not be written are not dropped");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("NumberOfEmployees"));
+        }
+        assertEquals(1, server.getCalls("update"));
+    }
+}
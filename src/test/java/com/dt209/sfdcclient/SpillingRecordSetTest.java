@@ -0,0 +1,80 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpillingRecordSetTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void spillsPastBudgetTest() throws IOException {
+        MockSoapServer server = new MockSoapServer().setQueryRows(1200).setBatchSize(500);
+        SfdcTransport transport = new SfdcTransport();
+        SfdcClient sfdcClient = new SfdcClient(server.getLoginUrl(), "user", "password", "token", transport);
+        try (SpillingRecordSet records = sfdcClient.queryRecords("SELECT Id, Name FROM Account", new QueryOptions(),
+                64 * 1024)) {
+            assertEquals(1200, records.size());
+            assertTrue(records.getSpilledRows() > 1000);
+            assertEquals("Account & Co 1100", records.get(1100).get("Name"));
+            assertEquals(Integer.valueOf(100), records.get(1100).getInteger("NumberOfEmployees"));
+            assertEquals("Account & Co 3", records.get(3).get("Name"));
+            int row = 0;
+            for (Record record : records) {
+                assertEquals(String.format("001%012dAAA", row++), record.get("Id"));
+            }
+            assertEquals(1200, row);
+        } finally {
+            sfdcClient.close();
+            transport.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void mapRowsAndCleanupTest() throws IOException {
+        Path directory = folder.newFolder().toPath();
+        SpillingRecordSet records = new SpillingRecordSet(0, directory);
+        Map<String, String> first = new LinkedHashMap<>();
+        first.put("Id", "001000000000001AAA");
+        first.put("Description", "Z\u00fcrich\nline two");
+        records.onRecord(first);
+        Map<String, String> second = new HashMap<>();
+        second.put("Name", "Only a name");
+        second.put("Description", "");
+        records.onRecord(second);
+
+        assertEquals(2, records.getSpilledRows());
+        assertEquals("Z\u00fcrich\nline two", records.get(0).get("Description"));
+        assertEquals(first, records.get(0));
+        assertNull(records.get(1).get("Id"));
+        assertEquals("", records.get(1).get("Description"));
+        assertEquals("Only a name", records.get(1).get("Name"));
+        // Written after the first reads mapped the file
+        Map<String, String> third = new HashMap<>();
+        third.put("Id", "001000000000003AAA");
+        records.onRecord(third);
+        Iterator<Record> iterator = records.iterator();
+        iterator.next();
+        iterator.next();
+        assertEquals("001000000000003AAA", iterator.next().get("Id"));
+        assertFalse(iterator.hasNext());
+
+        assertEquals(1, directory.toFile().list().length);
+        records.close();
+        assertEquals(0, directory.toFile().list().length);
+    }
+}
@@ -0,0 +1,88 @@
+package com.dt209.sfdcclient;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Date;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ValueCodecTest {
+    private static FieldDescribe field(String type, String soapType) {
+        return new FieldDescribe("Field__c", type, soapType, true, true, true);
+    }
+
+    @Test
+    public void decodeTest() {
+        assertEquals(Boolean.TRUE, ValueCodec.decode(field("boolean", "xsd:boolean"), "true"));
+        assertEquals(42, ValueCodec.decode(field("int", "xsd:int"), "42"));
+        assertEquals(1.5, ValueCodec.decode(field("double", "xsd:double"), "1.5"));
+        assertEquals(new BigDecimal("19.99"), ValueCodec.decode(field("currency", "xsd:double"), "19.99"));
+        assertEquals(LocalDate.of(2018, 5, 1), ValueCodec.decode(field("date", "xsd:date"), "2018-05-01"));
+        assertEquals(Instant.parse("2018-05-01T10:15:30Z"),
+                ValueCodec.decode(field("datetime", "xsd:dateTime"), "2018-05-01T10:15:30.000Z"));
+        assertEquals(LocalTime.of(10, 15, 30), ValueCodec.decode(field("time", "xsd:time"), "10:15:30.000Z"));
+        assertArrayEquals(new byte[] {1, 2}, (byte[]) ValueCodec.decode(field("base64", "xsd:base64Binary"), "AQI="));
+        assertEquals("text", ValueCodec.decode(field("string", "xsd:string"), "text"));
+        assertNull(ValueCodec.decode(field("int", "xsd:int"), ""));
+        assertEquals("", ValueCodec.decode(null, ""));
+        try {
+            ValueCodec.decode(field("int", "xsd:int"), "forty-two");
+            fail("Invalid values are not returned as text");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void encodeTest() {
+        assertEquals("1000", ValueCodec.encode(new BigDecimal("1E+3")));
+        assertEquals("2018-05-01T10:15:30.000Z", ValueCodec.encode(Instant.parse("2018-05-01T10:15:30Z")));
+        assertEquals("2018-05-01T10:15:30.000Z", ValueCodec.encode(Date.from(Instant.parse("2018-05-01T10:15:30Z"))));
+        assertEquals("2018-05-01", ValueCodec.encode(LocalDate.of(2018, 5, 1)));
+        assertEquals("2018-05-01", ValueCodec.encode(java.sql.Date.valueOf("2018-05-01")));
+        assertEquals("10:15:30.000Z", ValueCodec.encode(LocalTime.of(10, 15, 30)));
+        assertEquals("2018-05-01",
+                ValueCodec.encode(field("date", "xsd:date"), Instant.parse("2018-05-01T23:30:00Z")));
+        assertEquals("yes", ValueCodec.encode(field("boolean", "xsd:boolean"), "yes"));
+        try {
+            ValueCodec.encode(LocalDateTime.of(2018, 5, 1, 10, 15));
+            fail("A LocalDateTime has no time zone");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            ValueCodec.encode(field("int", "xsd:int"), Boolean.TRUE);
+            fail("A Boolean is not a number");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void sfdcFormatTest() throws IOException {
+        Date date = Date.from(Instant.parse("2018-05-01T10:15:30Z"));
+        String formatted;
+        try (SfdcClient sfdcClient = new SfdcClient("localhost", SfdcClient.SOAP_PATH, "user", "password", "token")) {
+            formatted = sfdcClient.toSfdcFormat(date);
+        }
+        assertEquals("2018-05-01T10:15:30+0000", formatted);
+        assertEquals(date, SfdcClient.fromSfdcFormat(formatted));
+        assertEquals(date, SfdcClient.fromSfdcFormat("2018-05-01T10:15:30.000Z"));
+        assertEquals(date, SfdcClient.fromSfdcFormat("2018-05-01T12:15:30+02:00"));
+        try {
+            SfdcClient.fromSfdcFormat("2018-05-01");
+            fail("A date without time can not be read as a dateTime");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}